@@ -0,0 +1,375 @@
+/**BatchEngine.java runs up to 64 replicates of a simulation in lock-step over one shared
+ * (unweighted) Topology, so that a batch study walks the graph's structure once per round
+ * instead of once per replicate per round. Each replicate is a lane: bit l of a node's
+ * state masks says whether the node is infected, recovered or nonhuman in replicate l,
+ * and the counters, agent counts and edge flows of the replicates sit next to each other
+ * in primitive arrays (node u's lanes at u * lanes, edge e's at e * lanes). Lanes a mask
+ * rules out are never looked at, so a node that is susceptible and empty in every
+ * replicate (most of them, most of the time) costs a couple of mask tests.
+ * 
+ * Only the structure is shared. Each replicate weights the edges with its own seed, as a
+ * replicate run on its own would, so the replicates of a batch are as independent as
+ * separate runs. That costs a double per edge per lane: a node's bounds are kept lane by
+ * lane (lane l's at edgeStart(u) * lanes + l * degree), so each lane's can be searched
+ * as one range. A batch whose per-lane arrays wouldn't fit in an array is rejected.
+ * 
+ * The rules and the rounds are those of CompactEngine, lane by lane. Lane l draws from
+ * the streams of its own seed exactly as CompactEngine would, so its output is the same
+ * as a CompactEngine run with that seed over the graph weighted for that seed. Every
+ * lane has its own Leader, which writes its output as usual; a lane stops when its
+ * leader says so, and the batch stops once every lane has. Events aren't logged.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package impl;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import util.Link;
+import util.NodeState;
+import util.RoundTally;
+import util.RoutingKernel;
+import util.SplitMix;
+import util.Topology;
+
+public class BatchEngine
+{
+	public final static int MAX_LANES = 64; //replicates per batch, one per bit of a long
+	private final static int GRAIN = 8192; //nodes + edges per leaf task
+	
+	private Topology graph;
+	private Leader[] leaders;
+	private long[] seeds;
+	private int lanes;
+	private long[] infected; //per node, bit l set if the node is infected in lane l
+	private long[] recovered;
+	private long[] nonhuman;
+	private byte[] sickCounters; //lanes per node
+	private byte[] sanitationCounters;
+	private int[] agents;
+	private int[] thrownAway;
+	private int[] flow; //lanes per edge: the agents sent along it last round
+	private double[] bounds; //lanes per edge: each lane's upper bounds of a node's edges in turn
+	private long active; //the lanes still running
+	private ForkJoinPool pool;
+	
+	/**Makes an engine over the given graph and the nodes of each replicate
+	 * 
+	 * @param graph the topology of every replicate; its own weights (if any) aren't used
+	 * @param states states[l] is the state of each node at the start of replicate l
+	 * @param leaders leaders[l] is the leader replicate l reports to. These should NOT be
+	 * 		started as threads
+	 * @param seeds seeds[l] is the seed of replicate l, as CompactEngine takes it. Its edges
+	 * 		are weighted from SplitMix.stream(seeds[l], -1), as Runner weights a graph
+	 * @param stay the probability that an agent will stay within a node
+	 * @param parallelism the number of worker threads to use
+	 */
+	public BatchEngine(Topology graph, NodeState[][] states, Leader[] leaders, long[] seeds,
+			double stay, int parallelism)
+	{
+		lanes = states.length;
+		if (lanes < 1 || lanes > MAX_LANES || leaders.length != lanes || seeds.length != lanes)
+			throw new IllegalArgumentException("A batch needs 1 to " + MAX_LANES
+					+ " replicates, each with a leader and a seed");
+		long edgeLanes = graph.getNumEdges() * lanes;
+		if (edgeLanes > Integer.MAX_VALUE || (long) graph.getNumNodes() * lanes > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The graph is too big for a batch of " + lanes
+					+ " (" + edgeLanes + " edge lanes)");
+		this.graph = graph;
+		this.leaders = leaders;
+		this.seeds = seeds;
+		int n = graph.getNumNodes();
+		infected = new long[n];
+		recovered = new long[n];
+		nonhuman = new long[n];
+		for (int l = 0; l < lanes; l++)
+		{
+			for (int u = 0; u < n; u++)
+			{
+				if (states[l][u] == NodeState.INFECTED)
+					infected[u] |= 1L << l;
+				else if (states[l][u] == NodeState.RECOVERED)
+					recovered[u] |= 1L << l;
+				else if (states[l][u] == NodeState.NONHUMAN)
+					nonhuman[u] |= 1L << l;
+			}
+			leaders[l].setNumNodes(n);
+		}
+		sickCounters = new byte[n * lanes];
+		sanitationCounters = new byte[n * lanes];
+		agents = new int[n * lanes];
+		thrownAway = new int[n * lanes];
+		flow = new int[(int) edgeLanes];
+		active = (lanes == MAX_LANES) ? -1L : (1L << lanes) - 1;
+		pool = new ForkJoinPool(parallelism);
+		graph.indexInEdges();
+		weightEdges(stay);
+	}
+	
+	public BatchEngine(Topology graph, NodeState[][] states, Leader[] leaders, long[] seeds,
+			double stay)
+	{
+		this(graph, states, leaders, seeds, stay, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/** Weights every lane's edges, in parallel **/
+	private void weightEdges(final double stay)
+	{
+		bounds = new double[flow.length];
+		final long[] weightSeeds = new long[lanes];
+		for (int l = 0; l < lanes; l++)
+			weightSeeds[l] = SplitMix.stream(seeds[l], -1);
+		graph.forEachNode(new Topology.NodeAction()
+		{
+			@Override
+			public void apply(int u)
+			{
+				int start = (int) graph.edgeStart(u);
+				int degree = (int) (graph.edgeEnd(u) - start);
+				for (int l = 0; l < lanes; l++)
+					Link.weightBounds(stay, SplitMix.stream(weightSeeds[l], u + 1), bounds,
+							start * lanes + l * degree, degree);
+			}
+		});
+	}
+	
+	/** Runs rounds until every lane's leader has decided to stop, then shuts down the pool **/
+	public void run()
+	{
+		try
+		{
+			for (int l = 0; l < lanes; l++)
+				leaders[l].beginSimulation();
+			for (int round = 0; active != 0; round++)
+			{
+				int n = graph.getNumNodes();
+				pool.invoke(new ReceiveTask(0, n));
+				RoundTally[] tallies = pool.invoke(new TransitionTask(round, 0, n));
+				for (long lanesLeft = active; lanesLeft != 0; lanesLeft &= lanesLeft - 1)
+				{
+					int l = Long.numberOfTrailingZeros(lanesLeft);
+					if (!leaders[l].completeRound(tallies[l]))
+					{
+						active &= ~(1L << l);
+						leaders[l].endSimulation();
+					}
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			System.out.println("Exception in batch engine.");
+			e.printStackTrace();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+	
+	/** Phase one: node v collects the agents sent to it last round, in every lane at once
+	 * @param received scratch space for the lanes' totals
+	 */
+	private void receive(int v, int[] received)
+	{
+		long first = graph.inEdgeStart(v);
+		long last = graph.inEdgeEnd(v);
+		if (first == last)
+			return;
+		for (int l = 0; l < lanes; l++)
+			received[l] = 0;
+		for (long k = first; k < last; k++)
+		{
+			int base = (int) graph.inEdge(k) * lanes;
+			for (int l = 0; l < lanes; l++)
+				received[l] += flow[base + l];
+		}
+		for (long lanesLeft = active; lanesLeft != 0; lanesLeft &= lanesLeft - 1)
+		{
+			int l = Long.numberOfTrailingZeros(lanesLeft);
+			agents[v * lanes + l] += received[l];
+		}
+	}
+	
+	/** Phase two: node u changes state in every lane as CompactEngine.transition() does,
+	 * then routes its agents. The node is then added to each lane's tally
+	 */
+	private void transition(int u, int round, RoundTally[] tallies)
+	{
+		int node = u * lanes;
+		long start = graph.edgeStart(u);
+		int degree = (int) (graph.edgeEnd(u) - start);
+		for (long e = start; e < start + degree; e++)
+		{
+			for (long lanesLeft = active; lanesLeft != 0; lanesLeft &= lanesLeft - 1)
+				flow[(int) e * lanes + Long.numberOfTrailingZeros(lanesLeft)] = 0;
+		}
+		
+		//a susceptible node with agents is infected, one without any is left alone
+		long holding = 0;
+		for (long lanesLeft = active; lanesLeft != 0; lanesLeft &= lanesLeft - 1)
+		{
+			int l = Long.numberOfTrailingZeros(lanesLeft);
+			if (agents[node + l] > 0)
+				holding |= 1L << l;
+		}
+		long susceptible = active & ~(infected[u] | recovered[u] | nonhuman[u]);
+		infected[u] |= susceptible & holding;
+		
+		for (long lanesLeft = infected[u] & active; lanesLeft != 0; lanesLeft &= lanesLeft - 1)
+		{
+			int l = Long.numberOfTrailingZeros(lanesLeft);
+			int sickCounter = sickCounters[node + l] + 1;
+			sickCounters[node + l] = (byte) sickCounter;
+			if (sickCounter > Node.RECOVERY_THRESHOLD)
+			{
+				infected[u] &= ~(1L << l);
+				recovered[u] |= 1L << l;
+			}
+			//if we are infected and have received no agents, generate one
+			else if (agents[node + l] == 0)
+				agents[node + l] = 1;
+		}
+		for (long lanesLeft = recovered[u] & active; lanesLeft != 0; lanesLeft &= lanesLeft - 1)
+		{
+			int l = Long.numberOfTrailingZeros(lanesLeft);
+			thrownAway[node + l] += agents[node + l];
+			agents[node + l] = 0;
+		}
+		for (long lanesLeft = nonhuman[u] & active; lanesLeft != 0; lanesLeft &= lanesLeft - 1)
+		{
+			int l = Long.numberOfTrailingZeros(lanesLeft);
+			int sanitationCounter = sanitationCounters[node + l] + 1;
+			if (sanitationCounter > Node.SANITATION_THRESHOLD)
+			{
+				thrownAway[node + l] += agents[node + l];
+				agents[node + l] = 0;
+				sanitationCounter = 0;
+			}
+			sanitationCounters[node + l] = (byte) sanitationCounter;
+		}
+		
+		//agent i of lane l takes the edge its draw from lane l's stream picks
+		long routing = (infected[u] | nonhuman[u]) & active;
+		for (long lanesLeft = active; lanesLeft != 0; lanesLeft &= lanesLeft - 1)
+		{
+			int l = Long.numberOfTrailingZeros(lanesLeft);
+			long bit = 1L << l;
+			int count = agents[node + l];
+			int sent = 0;
+			if ((routing & bit) != 0 && degree > 0 && count > 0)
+			{
+				long roundStream = SplitMix.stream(SplitMix.stream(seeds[l], u + 1), round);
+				int laneStart = (int) start * lanes + l * degree;
+				for (int i = 0; i < count; i++)
+				{
+					int edge = RoutingKernel.findLink(bounds, laneStart, laneStart + degree,
+							SplitMix.uniform(roundStream, i));
+					if (edge < degree)
+					{
+						flow[(int) (start + edge) * lanes + l]++;
+						sent++;
+					}
+				}
+				agents[node + l] = count - sent;
+			}
+			
+			NodeState state = NodeState.SUSCEPTIBLE;
+			if ((infected[u] & bit) != 0)
+				state = NodeState.INFECTED;
+			else if ((recovered[u] & bit) != 0)
+				state = NodeState.RECOVERED;
+			else if ((nonhuman[u] & bit) != 0)
+				state = NodeState.NONHUMAN;
+			tallies[l].add(state, agents[node + l], thrownAway[node + l], sent);
+		}
+	}
+	
+	/** @return true if [low, high) is small enough to be a leaf task, by its out-edges **/
+	private boolean isLeaf(int low, int high)
+	{
+		return high - low <= 1 || graph.edgeStart(high) - graph.edgeStart(low) + (high - low) <= GRAIN;
+	}
+	
+	private class ReceiveTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private int low;
+		private int high;
+		
+		ReceiveTask(int low, int high)
+		{
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (high - low <= 1 || graph.inEdgeStart(high) - graph.inEdgeStart(low) + (high - low) <= GRAIN)
+			{
+				int[] received = new int[lanes];
+				for (int v = low; v < high; v++)
+					receive(v, received);
+				return;
+			}
+			int mid = (low + high) >>> 1;
+			invokeAll(new ReceiveTask(low, mid), new ReceiveTask(mid, high));
+		}
+	}
+	
+	private class TransitionTask extends RecursiveTask<RoundTally[]>
+	{
+		private static final long serialVersionUID = 1L;
+		private int round;
+		private int low;
+		private int high;
+		
+		TransitionTask(int round, int low, int high)
+		{
+			this.round = round;
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		protected RoundTally[] compute()
+		{
+			if (isLeaf(low, high))
+			{
+				RoundTally[] tallies = new RoundTally[lanes];
+				for (int l = 0; l < lanes; l++)
+					tallies[l] = new RoundTally();
+				for (int u = low; u < high; u++)
+					transition(u, round, tallies);
+				return tallies;
+			}
+			int mid = (low + high) >>> 1;
+			TransitionTask left = new TransitionTask(round, low, mid);
+			left.fork();
+			RoundTally[] tallies = new TransitionTask(round, mid, high).compute();
+			RoundTally[] others = left.join();
+			for (int l = 0; l < lanes; l++)
+				tallies[l].add(others[l]);
+			return tallies;
+		}
+	}
+}
@@ -0,0 +1,458 @@
+/**CompactEngine.java runs a simulation over a Topology and a NodeStore instead of over
+ * Node objects, so that networks of millions of nodes fit in memory. Those can be on
+ * the heap (Graph, NodeTable) or, for the largest graphs, off it (OffHeapGraph,
+ * OffHeapNodeTable), which leaves the collector almost nothing to do. Agents aren't
+ * kept individually, only counted: a node with c agents draws c random numbers from
+ * its stream for the round, exactly as a Node would for its c agents, and counts how
+ * many take each edge. The counts (and so the output) are the same as RoundEngine's
+ * for the same seed, since an agent's route only depends on its position in the node.
+ * 
+ * Rounds have the same two phases as RoundEngine with pull delivery: each node
+ * transitions and leaves the number of agents it sends along each edge in that edge's
+ * flow slot of the store, then in the next round each node adds up the slots of its
+ * in-edges.
+ * Every slot has one writer and one reader, so neither phase has any write contention.
+ * Both phases are split by the number of edges (plus nodes) in a range, which the CSR
+ * offsets already give as a prefix sum. The transition phase also tallies the nodes
+ * for the leader, so no StatBundles are made. Rounds may be pipelined as in RoundEngine.
+ * 
+ * Once a round moves no agents, and every node that could move some (the infected, and
+ * environment nodes holding agents) has no out-edges, nothing but the sick and sanitation
+ * counters changes until the first of them reaches its threshold. The rounds before that
+ * aren't computed: the leader is given the last round's tally again for each of them
+ * (no random numbers would have been drawn in them), and the counters are moved on at once.
+ * 
+ * Small graphs are better off on one thread: with a parallelism of 1 no pool is made,
+ * and each round is two plain loops over the nodes on the calling thread, with no
+ * tasks, queues or pipelining (Runner picks this below SEQUENTIAL_BELOW nodes).
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import util.EventLog;
+import util.NodeStore;
+import util.NodeTable;
+import util.RoundTally;
+import util.SplitMix;
+import util.Topology;
+
+public class CompactEngine
+{
+	private final static int GRAIN = 8192; //nodes + edges per leaf task
+	
+	private Topology graph;
+	private NodeStore table;
+	private Leader leader;
+	private long seed;
+	private ForkJoinPool pool;
+	private boolean pipelined; //overlap the leader's work on each round with the next round
+	private int round; //the next round step() computes
+	
+	/**Makes an engine over the given graph and nodes
+	 * 
+	 * @param graph the topology of the simulation, weighted
+	 * @param table the state of each node
+	 * @param leader the leader to report to. This should NOT be started as a thread.
+	 * 		May be null if the engine is only stepped
+	 * @param seed the seed of the run; node i + 1 draws from SplitMix.stream(seed, i + 1)
+	 * 		as Node.setSeed(seed) would
+	 * @param parallelism the number of worker threads to use, or 1 to run on the calling thread
+	 */
+	public CompactEngine(Topology graph, NodeStore table, Leader leader, long seed, int parallelism)
+	{
+		this.graph = graph;
+		this.table = table;
+		this.leader = leader;
+		this.seed = seed;
+		if (parallelism > 1)
+			pool = new ForkJoinPool(parallelism);
+		graph.indexInEdges();
+		if (leader != null)
+			leader.setNumNodes(table.getNumNodes());
+	}
+	
+	public CompactEngine(Topology graph, NodeStore table, Leader leader, long seed)
+	{
+		this(graph, table, leader, seed, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/** Makes a copy of a stepped engine that carries on from the same state (see split()) **/
+	private CompactEngine(CompactEngine original, long seed)
+	{
+		graph = original.graph;
+		table = new NodeTable(original.table, graph.getNumEdges());
+		this.seed = seed;
+		pool = original.pool;
+		round = original.round;
+	}
+	
+	/** Computes the next round of a simulation that is stepped rather than run. Nothing is
+	 * reported: it is up to the caller to decide when the simulation is over
+	 * @return the tally of the nodes at the end of the round
+	 */
+	RoundTally step()
+	{
+		return computeRound(round++);
+	}
+	
+	/** @return the number of rounds step() has computed **/
+	int getRound()
+	{
+		return round;
+	}
+	
+	/** Copies a stepped engine, so that the copy can be stepped on from the same state.
+	 * The copy shares this engine's graph and pool, keeps its nodes in a NodeTable, and
+	 * has no leader, so logs no events
+	 * @param seed the seed the copy draws its later rounds from, so that it doesn't
+	 * 		repeat what this engine will do
+	 */
+	CompactEngine split(long seed)
+	{
+		return new CompactEngine(this, seed);
+	}
+	
+	/** Shuts down the pool of a stepped engine and its splits **/
+	void shutdown()
+	{
+		if (pool != null)
+			pool.shutdown();
+	}
+	
+	/** Sets whether the leader completes each round while the next one is computed.
+	 * Ignored if the leader is logging events, since an over-run round's can't be discarded,
+	 * or if the engine runs on the calling thread
+	 */
+	public void setPipelined(boolean pipelined)
+	{
+		this.pipelined = pipelined;
+	}
+	
+	/** Runs rounds until the leader decides to stop, then shuts down the pool **/
+	public void run()
+	{
+		try
+		{
+			leader.beginSimulation();
+			if (pipelined && pool != null && leader.getEventLog() == null)
+			{
+				RoundPipeline pipeline = new RoundPipeline();
+				boolean submitted = true;
+				for (int round = 0; submitted; round++)
+				{
+					RoundTally tally = computeRound(round);
+					submitted = pipeline.submit(completion(tally));
+					int window = submitted ? holdingWindow(tally) : 0;
+					int skipped = 0;
+					while (skipped < window && submitted)
+					{
+						submitted = pipeline.submit(completion(tally));
+						skipped++;
+					}
+					skipRounds(skipped);
+					round += skipped;
+				}
+				pipeline.finish();
+			}
+			else
+			{
+				for (int round = 0; leader.continueSimulation(); round++)
+				{
+					RoundTally tally = computeRound(round);
+					leader.completeRound(tally);
+					int window = holdingWindow(tally);
+					int skipped = 0;
+					for (; skipped < window && leader.continueSimulation(); skipped++)
+						leader.completeRound(tally);
+					skipRounds(skipped);
+					round += skipped;
+				}
+			}
+			leader.endSimulation();
+		}
+		catch (Exception e)
+		{
+			System.out.println("Exception in compact engine.");
+			e.printStackTrace();
+		}
+		finally
+		{
+			shutdown();
+		}
+	}
+	
+	/** @return a task that has the leader complete a round with the given tally **/
+	private Callable<Boolean> completion(final RoundTally tally)
+	{
+		return new Callable<Boolean>()
+		{
+			@Override
+			public Boolean call()
+			{
+				return leader.completeRound(tally);
+			}
+		};
+	}
+	
+	/** Finds how many rounds after the one just computed are the same as it, if any
+	 * @param tally the tally of the round just computed
+	 * @return the number of rounds before the next recovery or purge, if no agent can move
+	 * 		until then (Integer.MAX_VALUE if there is none), else 0
+	 */
+	private int holdingWindow(RoundTally tally)
+	{
+		if (tally.getNumAgentsSent() > 0)
+			return 0;
+		int window = Integer.MAX_VALUE;
+		for (int u = 0; u < table.getNumNodes(); u++)
+		{
+			byte state = table.getState(u);
+			int counter;
+			if (state == NodeTable.INFECTED)
+				counter = Node.RECOVERY_THRESHOLD - table.getSickCounter(u);
+			else if (state == NodeTable.NONHUMAN && table.getAgents(u) > 0)
+				counter = Node.SANITATION_THRESHOLD - table.getSanitationCounter(u);
+			else
+				continue;
+			if (graph.edgeEnd(u) > graph.edgeStart(u))
+				return 0;
+			window = Math.min(window, counter);
+		}
+		return window;
+	}
+	
+	/** Moves the counters on as the given number of rounds in a holding window would **/
+	private void skipRounds(int rounds)
+	{
+		if (rounds == 0)
+			return;
+		for (int u = 0; u < table.getNumNodes(); u++)
+		{
+			byte state = table.getState(u);
+			if (state == NodeTable.INFECTED)
+				table.setSickCounter(u, table.getSickCounter(u) + rounds);
+			else if (state == NodeTable.NONHUMAN)
+			{
+				long counter = (long) table.getSanitationCounter(u) + rounds;
+				table.setSanitationCounter(u, (int) (counter % (Node.SANITATION_THRESHOLD + 1)));
+			}
+		}
+	}
+	
+	/** Runs both phases of a round
+	 * @return the tally of the nodes at the end of the round
+	 */
+	private RoundTally computeRound(int round)
+	{
+		int n = table.getNumNodes();
+		if (pool == null)
+		{
+			for (int v = 0; v < n; v++)
+				receive(v, round);
+			RoundTally tally = new RoundTally();
+			for (int u = 0; u < n; u++)
+				transition(u, round, tally);
+			return tally;
+		}
+		pool.invoke(new ReceiveTask(round, 0, n));
+		return pool.invoke(new TransitionTask(round, 0, n));
+	}
+	
+	/** @return the leader's event stream, or null if there's none (or no leader) **/
+	private EventLog events()
+	{
+		return (leader == null) ? null : leader.getEventLog();
+	}
+	
+	/** Phase one: node v collects the agents sent to it last round **/
+	private void receive(int v, int round)
+	{
+		int received = 0;
+		long first = -1; //the first in-edge that carried an agent
+		for (long k = graph.inEdgeStart(v); k < graph.inEdgeEnd(v); k++)
+		{
+			int sent = table.getFlow(graph.inEdge(k));
+			if (sent > 0 && first == -1)
+				first = graph.inEdge(k);
+			received += sent;
+		}
+		if (received == 0)
+			return;
+		table.setAgents(v, table.getAgents(v) + received);
+		
+		//a susceptible node is infected by what it receives. Agents aren't kept, so the
+		//origin logged is the node that sent the first of them, not the one that made it
+		EventLog events = events();
+		if (events != null && table.getState(v) == NodeTable.SUSCEPTIBLE)
+			events.infection(v + 1, round, graph.source(first) + 1);
+	}
+	
+	/** Phase two: node u changes state as Node.prepareRouting() does, then routes its agents.
+	 * The node is then added to the tally.
+	 */
+	private void transition(int u, int round, RoundTally tally)
+	{
+		long start = graph.edgeStart(u);
+		int degree = (int) (graph.edgeEnd(u) - start);
+		for (long e = start; e < start + degree; e++)
+			table.setFlow(e, 0);
+		
+		byte state = table.getState(u);
+		int agents = table.getAgents(u);
+		int thrownAway = table.getThrownAway(u);
+		boolean routes = true;
+		EventLog events = events();
+		
+		if (state == NodeTable.SUSCEPTIBLE)
+		{
+			if (agents == 0)
+				routes = false;
+			else
+				state = NodeTable.INFECTED;
+		}
+		if (state == NodeTable.INFECTED)
+		{
+			int sickCounter = table.getSickCounter(u) + 1;
+			table.setSickCounter(u, sickCounter);
+			if (sickCounter > Node.RECOVERY_THRESHOLD)
+			{
+				state = NodeTable.RECOVERED;
+				if (events != null)
+					events.recovery(u + 1, round, agents);
+			}
+			//if we are infected and have received no agents, generate one
+			else if (agents == 0)
+				agents = 1;
+		}
+		if (state == NodeTable.RECOVERED)
+		{
+			thrownAway += agents;
+			agents = 0;
+			routes = false;
+		}
+		if (state == NodeTable.NONHUMAN)
+		{
+			int sanitationCounter = table.getSanitationCounter(u) + 1;
+			if (sanitationCounter > Node.SANITATION_THRESHOLD)
+			{
+				if (events != null && agents > 0)
+					events.sanitation(u + 1, round, agents);
+				thrownAway += agents;
+				agents = 0;
+				sanitationCounter = 0;
+			}
+			table.setSanitationCounter(u, sanitationCounter);
+		}
+		
+		//agent i takes the edge its draw picks, as with RoutingKernel.route()
+		int sent = 0;
+		if (routes && degree > 0)
+		{
+			long roundStream = SplitMix.stream(SplitMix.stream(seed, u + 1), round);
+			for (int i = 0; i < agents; i++)
+			{
+				int edge = graph.findEdge(u, SplitMix.uniform(roundStream, i));
+				if (edge < degree)
+				{
+					table.setFlow(start + edge, table.getFlow(start + edge) + 1);
+					sent++;
+				}
+			}
+			agents -= sent;
+		}
+		
+		table.setState(u, state);
+		table.setAgents(u, agents);
+		table.setThrownAway(u, thrownAway);
+		tally.add(NodeTable.unpack(state), agents, thrownAway, sent);
+	}
+	
+	/** @return true if [low, high) is small enough to be a leaf task, by its out-edges **/
+	private boolean isLeaf(int low, int high)
+	{
+		return high - low <= 1 || graph.edgeStart(high) - graph.edgeStart(low) + (high - low) <= GRAIN;
+	}
+	
+	private class ReceiveTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private int round;
+		private int low;
+		private int high;
+		
+		ReceiveTask(int round, int low, int high)
+		{
+			this.round = round;
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (high - low <= 1 || graph.inEdgeStart(high) - graph.inEdgeStart(low) + (high - low) <= GRAIN)
+			{
+				for (int v = low; v < high; v++)
+					receive(v, round);
+				return;
+			}
+			int mid = (low + high) >>> 1;
+			invokeAll(new ReceiveTask(round, low, mid), new ReceiveTask(round, mid, high));
+		}
+	}
+	
+	private class TransitionTask extends RecursiveTask<RoundTally>
+	{
+		private static final long serialVersionUID = 1L;
+		private int round;
+		private int low;
+		private int high;
+		
+		TransitionTask(int round, int low, int high)
+		{
+			this.round = round;
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		protected RoundTally compute()
+		{
+			if (isLeaf(low, high))
+			{
+				RoundTally tally = new RoundTally();
+				for (int u = low; u < high; u++)
+					transition(u, round, tally);
+				return tally;
+			}
+			int mid = (low + high) >>> 1;
+			TransitionTask left = new TransitionTask(round, low, mid);
+			left.fork();
+			RoundTally tally = new TransitionTask(round, mid, high).compute();
+			tally.add(left.join());
+			return tally;
+		}
+	}
+}
@@ -23,15 +23,26 @@
 package impl;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.DataFormatException;
 
+import util.AgentWheel;
+import util.EventLog;
 import util.NodeState;
+import util.OutputSink;
+import util.RoundListener;
+import util.RoundTally;
 import util.StatBundle;
 
 public class Leader extends Thread
@@ -46,11 +57,25 @@ public class Leader extends Thread
 	
 	private int n; //the number of nodes (not including me)
 	private Deque<StatBundle> messages;
+	private AtomicInteger numReported; //messages received this round
 	private int roundLimit; //number of rounds to run for... by default, -1
 							// (waits for all nodes to be infected)
-	private int currentRound;
-	private boolean keepGoing;
+	private volatile int currentRound;
+	private volatile boolean keepGoing;
+	private volatile boolean cancelled; //set by cancel(), from any thread
+	private volatile boolean completed; //set once the simulation has ended normally
+	private ReentrantLock roundLock; //parks waiting threads instead of polling
+	private Condition allReported; //signalled once all n nodes have reported
+	private Condition roundEnded; //signalled whenever currentRound advances
 	private BufferedWriter writer;
+	private ByteArrayOutputStream output; //what writer has written so far
+	private OutputSink sink;
+	private long runId;
+	private EventLog eventLog; //per-node event stream, null unless enabled
+	private AgentWheel agentWheel; //expires agents whose time to live is up, null if agents live forever
+	private ArrayList<RoundListener> listeners;
+	private double[] row; //the current round's 15-tuple, passed to listeners
+	private boolean verbose; //print each round to System.out
 	
 	//counters for infected nodes
 	private int numSus;
@@ -66,36 +91,64 @@ public class Leader extends Thread
 	private int numAgentsSent; //only totals for infected and environment nodes
 	
 	
-	/**Makes a leader node. NOTE: setNumNodes() MUST be called after making this node
+	/**Makes a leader node, which logs to the default output sink (directory output).
+	 * NOTE: setNumNodes() MUST be called after making this node
 	 * and BEFORE the simulation starts!
 	 */
 	public Leader()
+	{
+		this(new OutputSink(new File("output")));
+	}
+	
+	/**Makes a leader node. NOTE: setNumNodes() MUST be called after making this node
+	 * and BEFORE the simulation starts!
+	 * @param sink where the output of this run is appended once the simulation ends,
+	 * 		or null to not keep the output (e.g. if a RoundListener consumes it instead)
+	 */
+	public Leader(OutputSink sink)
 	{
 		n = -1;
 		messages = new ConcurrentLinkedDeque<>();
+		numReported = new AtomicInteger();
+		roundLock = new ReentrantLock();
+		allReported = roundLock.newCondition();
+		roundEnded = roundLock.newCondition();
 		roundLimit = -1;
 		currentRound = 0;
 		clearCounters();
 		keepGoing = true;
 		
-		//attempt to make the writers for output file. Use BufferedWriter for efficiency
+		listeners = new ArrayList<>();
+		row = new double[15];
+		verbose = true;
+		
+		//output is buffered in memory, then appended to the sink in one write
+		this.sink = sink;
+		output = new ByteArrayOutputStream();
+		writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+		runId = -1;
+		if (sink == null)
+			return;
 		try 
 		{
-			File root = new File("output");
-			File[] numoutputs = root.listFiles();
-			File output = new File("output/output" + numoutputs.length + ".csv");
-			output.createNewFile();
-			FileWriter innerwriter;
-			innerwriter = new FileWriter(output);
-			writer = new BufferedWriter(innerwriter);
+			runId = sink.nextRunId();
+			System.out.println("This is the leader node. Logging as run " + runId);
 		}
 		catch (IOException e)
 		{
-			System.out.println("Exception thrown when writing output file");
+			//without an id the output can't be told apart from others', so isn't kept
+			System.out.println("Exception thrown when assigning a run id; the output won't be logged");
 			e.printStackTrace();
+			this.sink = null;
 		}
 	}
 	
+	/** @return the id this run's output is stored under in the output sink, or -1 if none **/
+	public long getRunId()
+	{
+		return runId;
+	}
+	
 	public void setNumNodes(int numNodes)
 	{
 		n = numNodes;
@@ -106,9 +159,116 @@ public class Leader extends Thread
 		roundLimit = newLimit;
 	}
 	
+	/** @return everything written to the output so far (all of it, once the simulation ends) **/
+	public byte[] getOutput()
+	{
+		return output.toByteArray();
+	}
+	
+	/** @return true once the simulation has run its course and its output is complete;
+	 * 		false while it runs, or if it failed or was cancelled
+	 */
+	public boolean hasCompleted()
+	{
+		return completed;
+	}
+	
+	/** Logs the output of an identical, earlier run as this run's output, instead of
+	 * simulating. Round listeners are not called.
+	 * @param cached the output of the earlier run
+	 */
+	public void reuseOutput(byte[] cached) throws IOException
+	{
+		keepGoing = false;
+		if (sink != null)
+			sink.append(runId, cached);
+	}
+	
+	/** Registers a listener to be given each round's 15-tuple as it is produced **/
+	public void addRoundListener(RoundListener listener)
+	{
+		listeners.add(listener);
+	}
+	
+	/** Sets whether each round is printed to System.out (true by default) **/
+	public void setVerbose(boolean verbose)
+	{
+		this.verbose = verbose;
+	}
+	
+	/** Enables the per-node event stream. The log is closed when the simulation ends **/
+	public void setEventLog(EventLog log)
+	{
+		eventLog = log;
+	}
+	
+	/** Gives agents a time to live, enforced by the given wheel. Must be called before
+	 * the nodes are made, so that their first agents are scheduled too
+	 */
+	public void setAgentWheel(AgentWheel wheel)
+	{
+		agentWheel = wheel;
+	}
+	
+	/** @return the wheel agents are scheduled to expire in, or null if they live forever **/
+	public AgentWheel getAgentWheel()
+	{
+		return agentWheel;
+	}
+	
+	/** @return the per-node event stream, or null if events aren't being logged **/
+	public EventLog getEventLog()
+	{
+		return eventLog;
+	}
+	
 	public void recieveMessage(StatBundle msg)
 	{
 		messages.add(msg);
+		if (numReported.incrementAndGet() == n)
+		{
+			roundLock.lock();
+			try
+			{
+				allReported.signal();
+			}
+			finally
+			{
+				roundLock.unlock();
+			}
+		}
+	}
+	
+	/** Blocks the calling node until the universal round reaches round **/
+	public void awaitRound(int round) throws InterruptedException
+	{
+		if (currentRound >= round)
+			return;
+		roundLock.lock();
+		try
+		{
+			while (currentRound < round)
+				roundEnded.await();
+		}
+		finally
+		{
+			roundLock.unlock();
+		}
+	}
+	
+	/** Blocks the leader until all n nodes have reported for this round **/
+	private void awaitReports() throws InterruptedException
+	{
+		roundLock.lock();
+		try
+		{
+			while (numReported.get() < n)
+				allReported.await();
+		}
+		finally
+		{
+			roundLock.unlock();
+		}
 	}
 	
 	public boolean continueSimulation()
@@ -131,6 +291,8 @@ public class Leader extends Thread
 	 */
 	private boolean keepRunning()
 	{
+		if (cancelled)
+			return false;
 		//check to see if we are running to a round limit
 		if (roundLimit != -1)
 		{
@@ -139,16 +301,25 @@ public class Leader extends Thread
 			return false;
 		}
 		else
-		{
-			//stop if everyone has recovered
-			if ((numSus == 0 && currentRound > 0 && numInf == 0))
-				return false;
-			//also stop if there are no agents in the system
-			int totalAgents = numAgSus + numAgInf + numAgNonHum + numAgentsSent;
-			if (totalAgents == 0)
-				return false;
-			return true;
-		}
+			return outbreakContinues(currentRound, numSus, numInf,
+					numAgSus + numAgInf + numAgNonHum + numAgentsSent);
+	}
+	
+	/** Determines if a run that isn't running to a round limit goes on after a round
+	 * @param round the round that just ended
+	 * @param numSus, numInf the nodes susceptible and infected at its end
+	 * @param totalAgents the agents in the system at its end, including those in transit
+	 * @return false if everyone has recovered or there are no agents left, else true
+	 */
+	static boolean outbreakContinues(int round, int numSus, int numInf, int totalAgents)
+	{
+		//stop if everyone has recovered
+		if ((numSus == 0 && round > 0 && numInf == 0))
+			return false;
+		//also stop if there are no agents in the system
+		if (totalAgents == 0)
+			return false;
+		return true;
 	}
 	
 	/**Sets numSus, numInf, numRec, numNonHum, and their associated
@@ -173,10 +344,10 @@ public class Leader extends Thread
 	/** Iterates through all messages and counts the state of
 	 * each node as well as the number of agents
 	 */
-	private void processMessages()
+	private void processMessages(Deque<StatBundle> reports)
 	{
-		clearCounters();
-		Iterator<StatBundle> iter = messages.iterator();
+		RoundTally tally = new RoundTally();
+		Iterator<StatBundle> iter = reports.iterator();
 //		System.out.println("Processing messages. " + messages.size() + 
 //				" messages receieved");
 		while (iter.hasNext())
@@ -185,30 +356,25 @@ public class Leader extends Thread
 			NodeState state = bund.getState();
 //			System.out.println("Bundle recieved from " + bund.getName() +
 //					" State: " + state);
-			switch (state)
-			{
-				case SUSCEPTIBLE:
-					numSus++;
-					numAgSus += bund.getNumAgents();
-					break;
-				case INFECTED:
-					numInf++;
-					numAgInf += bund.getNumAgents();
-					numAgentsSent += bund.getMsgsSent();
-					break;
-				case NONHUMAN:
-					numNonHum++;
-					numAgNonHum += bund.getNumAgents();
-					numRemovedNonHum += bund.getThrownAway();
-					numAgentsSent += bund.getMsgsSent();
-					break;
-				case RECOVERED:
-					numRec++;
-					numRemovedRec += bund.getThrownAway();
-					break;
-			}
-				
+			tally.add(state, bund.getNumAgents(), bund.getThrownAway(), bund.getMsgsSent());
 		}
+		setCounters(tally);
+	}
+	
+	/** Sets numSus, numInf, etc. to the counts of a tally of this round **/
+	private void setCounters(RoundTally tally)
+	{
+		numSus = tally.getNumSus();
+		numInf = tally.getNumInf();
+		numRec = tally.getNumRec();
+		numNonHum = tally.getNumNonHum();
+		
+		numAgSus = tally.getNumAgSus();
+		numAgInf = tally.getNumAgInf();
+		numRemovedRec = tally.getNumRemovedRec();
+		numAgNonHum = tally.getNumAgNonHum();
+		numRemovedNonHum = tally.getNumRemovedNonHum();
+		numAgentsSent = tally.getNumAgentsSent();
 	}
 	
 	/** PRECONDITION: PROCESSMESSAGES() HAS BEEN CALLED BEFORE THIS METHOD EXECUTES
@@ -216,10 +382,13 @@ public class Leader extends Thread
 	 */
 	private void printStatistics()
 	{
-		System.out.println("This is the leader node. Round "
-				+ currentRound + " has ended. Printing statistics...");
-		System.out.println("(Number of nodes) S: " + numSus + " I: " + numInf 
-				+ " R: " + numRec + " Environment: " + numNonHum);
+		if (verbose)
+		{
+			System.out.println("This is the leader node. Round "
+					+ currentRound + " has ended. Printing statistics...");
+			System.out.println("(Number of nodes) S: " + numSus + " I: " + numInf 
+					+ " R: " + numRec + " Environment: " + numNonHum);
+		}
 		
 		//compute averages
 		double infAvg;
@@ -273,6 +442,128 @@ public class Leader extends Thread
 		{
 			e.printStackTrace();
 		}
+		
+		if (listeners.isEmpty())
+			return;
+		row[0] = currentRound;
+		row[1] = numSus;
+		row[2] = numInf;
+		row[3] = numRec;
+		row[4] = numNonHum;
+		row[5] = totalAg;
+		row[6] = numAgInf;
+		row[7] = infAvg;
+		row[8] = numAgentsSent;
+		row[9] = numAgNonHum;
+		row[10] = nonHumAvg;
+		row[11] = numRemovedRec;
+		row[12] = recAvg;
+		row[13] = numRemovedNonHum;
+		row[14] = removedEnvAvg;
+		for (int i = 0; i < listeners.size(); i++)
+			listeners.get(i).roundCompleted(row);
+	}
+	
+	/** Checks that the leader was set up properly and logs the metadata
+	 * to the output file. Must be called once before the first round ends.
+	 */
+	void beginSimulation() throws DataFormatException, IOException
+	{
+		if (n == -1)
+			throw new DataFormatException("Didn't initialize the number of nodes in the system");
+		//log metadata to output file
+		writer.write(OUTPUT_METADATA);
+	}
+	
+	/** Processes the StatBundles of the round that just ended, logs them, and
+	 * advances the universal round.
+	 * PRECONDITION: ALL N NODES HAVE REPORTED FOR THIS ROUND
+	 * @return true if the simulation should keep going
+	 */
+	boolean completeRound()
+	{
+		return completeRound(takeReports());
+	}
+	
+	/** Takes the StatBundles reported so far, so that the nodes can go on to report
+	 * the next round while these are processed (by completeRound(reports))
+	 * PRECONDITION: ALL N NODES HAVE REPORTED FOR THIS ROUND, AND NONE FOR THE NEXT
+	 * @return the StatBundles of the round that just ended
+	 */
+	Deque<StatBundle> takeReports()
+	{
+		Deque<StatBundle> reports = messages;
+		messages = new ConcurrentLinkedDeque<>();
+		numReported.set(0);
+		return reports;
+	}
+	
+	/** Processes the StatBundles of a round taken with takeReports(), logs them, and
+	 * advances the universal round.
+	 * @return true if the simulation should keep going
+	 */
+	boolean completeRound(Deque<StatBundle> reports)
+	{
+		processMessages(reports);
+		return endRound();
+	}
+	
+	/** Logs a round whose nodes were tallied by the engine running them (rather than
+	 * reported with StatBundles), and advances the universal round.
+	 * @param tally every node's state at the end of the round
+	 * @return true if the simulation should keep going
+	 */
+	boolean completeRound(RoundTally tally)
+	{
+		setCounters(tally);
+		return endRound();
+	}
+	
+	/** logs the round that was just counted and advances the universal round **/
+	private boolean endRound()
+	{
+		printStatistics();
+		keepGoing = keepRunning();
+		//let the nodes continue executing again
+		roundLock.lock();
+		try
+		{
+			currentRound++;
+			roundEnded.signalAll();
+		}
+		finally
+		{
+			roundLock.unlock();
+		}
+		return keepGoing;
+	}
+	
+	/** Stops the simulation at the end of the current round, as if it had run its course,
+	 * except that its output is dropped: it isn't appended to the sink, and the round
+	 * listeners aren't told the simulation ended
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+	
+	/** appends the output to the sink once the simulation has stopped **/
+	void endSimulation() throws IOException
+	{
+		writer.close();
+		if (cancelled)
+		{
+			if (eventLog != null)
+				eventLog.close();
+			return;
+		}
+		if (sink != null)
+			sink.append(runId, output.toByteArray());
+		for (int i = 0; i < listeners.size(); i++)
+			listeners.get(i).simulationEnded();
+		if (eventLog != null)
+			eventLog.close();
+		completed = true;
 	}
 	
 	@Override
@@ -280,24 +571,17 @@ public class Leader extends Thread
 	{
 		try
 		{
-			if (n == -1)
-				throw new DataFormatException("Didn't initialize the number of nodes in the system");
-			//log metadata to output file
-			writer.write(OUTPUT_METADATA);
+			beginSimulation();
 			
 			while (keepGoing)
 			{
 				//wait until all the nodes finish
-				while (messages.size() < n)
-					Thread.sleep(50);
-				processMessages();
-				printStatistics();
-				messages = new ConcurrentLinkedDeque<>();
-				keepGoing = keepRunning();
-				//let the nodes continue executing again
-				currentRound++;
+				awaitReports();
+				if (agentWheel != null)
+					agentWheel.expire(currentRound + 1);
+				completeRound();
 			}
-			writer.close();
+			endSimulation();
 		}
 		catch (Exception e)
 		{
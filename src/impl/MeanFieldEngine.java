@@ -0,0 +1,341 @@
+/**MeanFieldEngine.java runs a deterministic, expected-value version of a simulation,
+ * for screening scenarios quickly instead of averaging many stochastic runs. Each human
+ * node holds the probability it is susceptible, recovered, or infected with each value of
+ * its sick counter, and each node holds the expected number (mass) of agents in it. Every
+ * round a node sends the share of its mass each edge would draw (the width of the edge's
+ * bounds) along it, keeping the stay probability's share: a sparse matrix-vector product
+ * over the CSR topology, done in the same two phases as CompactEngine (each node writes
+ * its out-edges' flow slots, then each node sums its in-edges' slots).
+ * 
+ * The rules of Node are applied to the expected quantities, treating a node's state and
+ * its agents as independent and its agents as Poisson distributed with the node's mass:
+ * a susceptible node is infected with the probability that it holds any agent, an
+ * infected node that holds none generates one, a recovered node removes its agents, and
+ * the recovery and sanitation thresholds work as before. Node counts and masses are
+ * rounded when they are reported, so the output has the same 15 columns as any other run.
+ * Events aren't logged, since nothing happens to any one node or agent for certain.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package impl;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import util.NodeState;
+import util.RoundTally;
+import util.Topology;
+
+public class MeanFieldEngine
+{
+	private final static int GRAIN = 8192; //nodes + edges per leaf task
+	private final static int SUSCEPTIBLE = 0; //slots of a human node's probabilities
+	private final static int RECOVERED = 1;
+	private final static int INFECTED = 2; //+ the sick counter, up to RECOVERY_THRESHOLD
+	private final static int SLOTS = INFECTED + Node.RECOVERY_THRESHOLD + 1;
+	
+	private Topology graph;
+	private Leader leader;
+	private boolean[] nonhuman;
+	private double[] prob; //SLOTS per node: the probability the node is in each state
+	private int[] sanitationCounters;
+	private double[] mass; //the expected agents in each node
+	private double[] thrownAway; //the expected agents each node has removed
+	private double[] flow; //the expected agents sent along each edge last round
+	private ForkJoinPool pool;
+	
+	/**Makes an engine over the given graph and nodes
+	 * 
+	 * @param graph the topology of the simulation, weighted
+	 * @param states the initial state of each node
+	 * @param leader the leader to report to. This should NOT be started as a thread
+	 * @param parallelism the number of worker threads to use
+	 */
+	public MeanFieldEngine(Topology graph, NodeState[] states, Leader leader, int parallelism)
+	{
+		if (graph.getNumEdges() > Integer.MAX_VALUE
+				|| (long) states.length * SLOTS > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Graph is too large for the mean-field engine");
+		this.graph = graph;
+		this.leader = leader;
+		int n = states.length;
+		nonhuman = new boolean[n];
+		prob = new double[n * SLOTS];
+		for (int u = 0; u < n; u++)
+		{
+			switch (states[u])
+			{
+				case SUSCEPTIBLE:
+					prob[u * SLOTS + SUSCEPTIBLE] = 1;
+					break;
+				case INFECTED:
+					prob[u * SLOTS + INFECTED] = 1;
+					break;
+				case RECOVERED:
+					prob[u * SLOTS + RECOVERED] = 1;
+					break;
+				case NONHUMAN:
+					nonhuman[u] = true;
+					break;
+			}
+		}
+		sanitationCounters = new int[n];
+		mass = new double[n];
+		thrownAway = new double[n];
+		flow = new double[(int) graph.getNumEdges()];
+		pool = new ForkJoinPool(parallelism);
+		graph.indexInEdges();
+		leader.setNumNodes(n);
+	}
+	
+	public MeanFieldEngine(Topology graph, NodeState[] states, Leader leader)
+	{
+		this(graph, states, leader, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/** Runs rounds until the leader decides to stop, or until nothing much can change:
+	 * less than half a node is expected to be infected and half an agent to move.
+	 * Then shuts down the pool
+	 */
+	public void run()
+	{
+		try
+		{
+			leader.beginSimulation();
+			int n = nonhuman.length;
+			while (leader.continueSimulation())
+			{
+				pool.invoke(new ReceiveTask(0, n));
+				ExpectedTally tally = pool.invoke(new TransitionTask(0, n));
+				boolean keepGoing = leader.completeRound(tally.round());
+				if (!keepGoing || (tally.inf < 0.5 && tally.sentInf + tally.sentNonHum < 0.5))
+					break;
+			}
+			leader.endSimulation();
+		}
+		catch (Exception e)
+		{
+			System.out.println("Exception in mean-field engine.");
+			e.printStackTrace();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+	
+	/** Phase one: node v collects the mass sent to it last round **/
+	private void receive(int v)
+	{
+		double received = 0;
+		for (long k = graph.inEdgeStart(v); k < graph.inEdgeEnd(v); k++)
+			received += flow[(int) graph.inEdge(k)];
+		mass[v] += received;
+	}
+	
+	/** Phase two: node u changes state by the expected-value rules, then routes its mass.
+	 * The node is then added to the tally
+	 */
+	private void transition(int u, ExpectedTally tally)
+	{
+		int start = (int) graph.edgeStart(u);
+		int end = (int) graph.edgeEnd(u);
+		for (int e = start; e < end; e++)
+			flow[e] = 0;
+		
+		double agents = mass[u];
+		double routed; //the agents that may leave the node
+		if (nonhuman[u])
+		{
+			routed = agents;
+			sanitationCounters[u]++;
+			if (sanitationCounters[u] > Node.SANITATION_THRESHOLD)
+			{
+				thrownAway[u] += agents;
+				agents = 0;
+				routed = 0;
+				sanitationCounters[u] = 0;
+			}
+		}
+		else
+		{
+			//shift the infected along by their sick counters, the last of them recovering
+			int base = u * SLOTS;
+			double none = Math.exp(-agents); //P(the node holds no agents)
+			double infected = prob[base + SUSCEPTIBLE] * (1 - none);
+			double stillInfected = 0; //infected before and after this round
+			prob[base + RECOVERED] += prob[base + SLOTS - 1];
+			for (int a = SLOTS - 1; a > INFECTED + 1; a--)
+			{
+				prob[base + a] = prob[base + a - 1];
+				stillInfected += prob[base + a];
+			}
+			prob[base + INFECTED + 1] = prob[base + INFECTED] + infected;
+			stillInfected += prob[base + INFECTED];
+			prob[base + INFECTED] = 0;
+			prob[base + SUSCEPTIBLE] -= infected;
+			
+			//recovered nodes remove what they hold, and infected ones holding nothing make one
+			double removed = agents * prob[base + RECOVERED];
+			thrownAway[u] += removed;
+			agents += none * stillInfected - removed;
+			routed = agents;
+		}
+		
+		//edge e is drawn with the probability between its bounds, as in Topology.findEdge()
+		double sent = 0;
+		double low = 0;
+		for (int e = start; e < end && routed > 0; e++)
+		{
+			double high = graph.bound(e);
+			flow[e] = routed * (high - low);
+			sent += flow[e];
+			low = high;
+		}
+		mass[u] = agents - sent;
+		tally.add(u, mass[u], sent);
+	}
+	
+	/** @return true if [low, high) is small enough to be a leaf task, by its out-edges **/
+	private boolean isLeaf(int low, int high)
+	{
+		return high - low <= 1 || graph.edgeStart(high) - graph.edgeStart(low) + (high - low) <= GRAIN;
+	}
+	
+	/** The RoundTally of a round, before its expected nodes and agents are rounded **/
+	private class ExpectedTally
+	{
+		private int numHuman;
+		private int numNonHum;
+		private double sus;
+		private double inf;
+		private double agInf;
+		private double removedRec;
+		private double sentInf;
+		private double agNonHum;
+		private double removedNonHum;
+		private double sentNonHum;
+		
+		void add(int u, double agents, double sent)
+		{
+			if (nonhuman[u])
+			{
+				numNonHum++;
+				agNonHum += agents;
+				removedNonHum += thrownAway[u];
+				sentNonHum += sent;
+				return;
+			}
+			//agents only stay and move in infected nodes: the others have none, or remove them
+			int base = u * SLOTS;
+			numHuman++;
+			sus += prob[base + SUSCEPTIBLE];
+			inf += 1 - prob[base + SUSCEPTIBLE] - prob[base + RECOVERED];
+			agInf += agents;
+			removedRec += thrownAway[u];
+			sentInf += sent;
+		}
+		
+		void add(ExpectedTally other)
+		{
+			numHuman += other.numHuman;
+			numNonHum += other.numNonHum;
+			sus += other.sus;
+			inf += other.inf;
+			agInf += other.agInf;
+			removedRec += other.removedRec;
+			sentInf += other.sentInf;
+			agNonHum += other.agNonHum;
+			removedNonHum += other.removedNonHum;
+			sentNonHum += other.sentNonHum;
+		}
+		
+		/** @return the tally with every expectation rounded, keeping the number of humans **/
+		RoundTally round()
+		{
+			int numSus = (int) Math.round(sus);
+			int numInf = Math.min((int) Math.round(inf), numHuman - numSus);
+			RoundTally tally = new RoundTally();
+			tally.add(NodeState.SUSCEPTIBLE, numSus, 0, 0, 0);
+			tally.add(NodeState.INFECTED, numInf, (int) Math.round(agInf), 0, (int) Math.round(sentInf));
+			tally.add(NodeState.RECOVERED, numHuman - numSus - numInf, 0, (int) Math.round(removedRec), 0);
+			tally.add(NodeState.NONHUMAN, numNonHum, (int) Math.round(agNonHum),
+					(int) Math.round(removedNonHum), (int) Math.round(sentNonHum));
+			return tally;
+		}
+	}
+	
+	private class ReceiveTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private int low;
+		private int high;
+		
+		ReceiveTask(int low, int high)
+		{
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (high - low <= 1 || graph.inEdgeStart(high) - graph.inEdgeStart(low) + (high - low) <= GRAIN)
+			{
+				for (int v = low; v < high; v++)
+					receive(v);
+				return;
+			}
+			int mid = (low + high) >>> 1;
+			invokeAll(new ReceiveTask(low, mid), new ReceiveTask(mid, high));
+		}
+	}
+	
+	private class TransitionTask extends RecursiveTask<ExpectedTally>
+	{
+		private static final long serialVersionUID = 1L;
+		private int low;
+		private int high;
+		
+		TransitionTask(int low, int high)
+		{
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		protected ExpectedTally compute()
+		{
+			if (isLeaf(low, high))
+			{
+				ExpectedTally tally = new ExpectedTally();
+				for (int u = low; u < high; u++)
+					transition(u, tally);
+				return tally;
+			}
+			int mid = (low + high) >>> 1;
+			TransitionTask left = new TransitionTask(low, mid);
+			left.fork();
+			ExpectedTally tally = new TransitionTask(mid, high).compute();
+			tally.add(left.join());
+			return tally;
+		}
+	}
+}
@@ -23,18 +23,22 @@
  */
 package impl;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.zip.DataFormatException;
 
 import util.Agent;
 import util.AgentComparator;
+import util.AgentWheel;
+import util.EventLog;
 import util.Link;
 import util.LinkComparator;
 import util.NodeState;
+import util.RoutingKernel;
+import util.SplitMix;
 import util.StatBundle;
 
 public class Node extends Thread
@@ -46,12 +50,26 @@ public class Node extends Thread
 	private int sanitationCounter; //rounds after last removing agents
 	private int thrownAway; //messages (if any) thrown away (if recovered or nonhuman)
 	private int msgsSent;
-	private final static int RECOVERY_THRESHOLD = 5; //transition to being recovered x rounds after exposure
-	private final static int SANITATION_THRESHOLD = 5; //remove agents after x rounds
-	private Deque<Agent> inQueue;
+	//both thresholds must stay below 127: NodeTable, OffHeapNodeTable and BatchEngine keep the
+	//counters in bytes, which would wrap before reaching a higher threshold
+	final static int RECOVERY_THRESHOLD = 5; //transition to being recovered x rounds after exposure
+	final static int SANITATION_THRESHOLD = 5; //remove agents after x rounds
+	private final static int BATCH_ROUTING_THRESHOLD = 32; //route with RoutingKernel at >= x agents
+															//(below 32, List.sort doesn't allocate)
+	private final static AgentComparator AGENT_ORDER = new AgentComparator();
+	private Deque<Agent> inQueue; //pushed agents; each one pushed costs a queue node (pull delivery avoids it)
 	private ArrayList<Agent> agents;			//agents residing w/in this node
 	private ArrayList<Link> outEdges;
+	private ArrayList<Link> inEdges; //links to this node, only kept for pull delivery
+	private boolean pullDelivery; //if true, agents are left in link outboxes instead of sent
+	private double[] bounds; //probHigh of each outEdge, for RoutingKernel
+	private int[] routeTo; //link each agent is using this round, if batchRouted
+	private boolean batchRouted; //true if this round's agents are routed by RoutingKernel
 	private Leader leader;
+	private long stream; //SplitMix stream this node draws from
+	private int edgesAdded; //links added after setEdges(), each drawing its own weight
+	private int expiredAgents; //agents here that AgentWheel expired since they were last dropped
+	private StatBundle[] reports; //used in alternate rounds: the leader may still be reading the last one
 	
 	/**Makes a node
 	 * 
@@ -74,14 +92,34 @@ public class Node extends Thread
 		agents = new ArrayList<>();
 		//for now, generate a single agent if we are infected
 		if (state == NodeState.INFECTED)
-			agents.add(new Agent(name));
+		{
+			Agent agent = new Agent(name, 0);
+			agent.setHolder(this);
+			agents.add(agent);
+			if (leader.getAgentWheel() != null)
+				leader.getAgentWheel().schedule(agent);
+		}
 		
 		outEdges = new ArrayList<>();
-		inQueue = new ArrayDeque<>();
+		inEdges = new ArrayList<>();
+		bounds = new double[0];
+		reports = new StatBundle[] {new StatBundle(name, state, 0, 0, 0, 0),
+				new StatBundle(name, state, 0, 0, 0, 0)};
+		routeTo = new int[0];
+		inQueue = new ConcurrentLinkedDeque<>(); //other nodes send concurrently
 		thrownAway = 0;
 		msgsSent = 0;
 		thisRound = 0;
 		sanitationCounter = 0;
+		stream = SplitMix.stream(ThreadLocalRandom.current().nextLong(), name);
+	}
+	
+	/** Makes this node's draws reproducible
+	 * @param seed the seed of the simulation (the same for every node)
+	 */
+	public void setSeed(long seed)
+	{
+		stream = SplitMix.stream(seed, name);
 	}
 	
 	
@@ -89,6 +127,7 @@ public class Node extends Thread
 	{
 		edges.sort(new LinkComparator());
 		outEdges = edges;
+		bounds = RoutingKernel.cumulativeBounds(edges);
 	}
 	
 	public ArrayList<Link> getEdges()
@@ -96,6 +135,70 @@ public class Node extends Thread
 		return outEdges;
 	}
 	
+	/** Adds a link from this node to dest with a newly drawn weight, unless there is
+	 * one already. The other links keep their weights, but the bounds of all of them
+	 * must be recomputed with reweightEdges() before the node transitions again.
+	 * @param dest the destination of the link
+	 * @return the new link, or null if there already was a link to dest
+	 */
+	Link addEdge(Node dest)
+	{
+		for (int i = 0; i < outEdges.size(); i++)
+		{
+			if (outEdges.get(i).getDestination() == dest)
+				return null;
+		}
+		Link link = new Link(dest);
+		link.drawWeight(SplitMix.uniform(SplitMix.stream(stream, -1), edgesAdded++));
+		outEdges.add(link);
+		if (pullDelivery)
+			dest.inEdges.add(link);
+		return link;
+	}
+	
+	/** Removes the link from this node to dest, if there is one. As with addEdge(),
+	 * reweightEdges() must be called before the node transitions again.
+	 * PRECONDITION: WITH PULL DELIVERY, THE LINK'S OUTBOX HAS BEEN COLLECTED
+	 * @param dest the destination of the link
+	 * @return the removed link, or null if there was no link to dest
+	 */
+	Link removeEdge(Node dest)
+	{
+		for (int i = 0; i < outEdges.size(); i++)
+		{
+			if (outEdges.get(i).getDestination() == dest)
+			{
+				Link link = outEdges.remove(i);
+				if (pullDelivery)
+					dest.inEdges.remove(link);
+				return link;
+			}
+		}
+		return null;
+	}
+	
+	/** Recomputes the bounds of this node's links (and the routing table built from
+	 * them) after links were added or removed
+	 * @param stay the probability that an agent will stay within a node
+	 */
+	void reweightEdges(double stay)
+	{
+		Link.normalizeEdges(outEdges, stay);
+		setEdges(outEdges);
+	}
+	
+	/** Switches this node to pull delivery: agents it routes are left in the outbox
+	 * of their link, and it collects its own agents from the outboxes of inEdges.
+	 * This only works when every node has routed before any node receives
+	 * (i.e. with RoundEngine), since outboxes are not synchronized.
+	 * @param inEdges every link whose destination is this node
+	 */
+	void setPullDelivery(ArrayList<Link> inEdges)
+	{
+		this.inEdges = inEdges;
+		pullDelivery = true;
+	}
+	
 	public int getNodeName()
 	{
 		return name;
@@ -116,18 +219,28 @@ public class Node extends Thread
 	{
 //		System.out.println("(in Node.java, recieveMessage): I am " + name
 //				+ " and an agent was recieved");
+		msg.setHolder(this);
 		inQueue.add(msg);
 	}
 	
+	/** Called by AgentWheel, between rounds, for each agent of this node that expires **/
+	public void agentExpired()
+	{
+		expiredAgents++;
+	}
+	
 	
 	/** Goes through the inqueue and adds those agents to the arraylist agents */
-	private void receiveMessages()
+	void receiveMessages()
 	{
+		for (int i = 0; i < inEdges.size(); i++)
+			inEdges.get(i).collect(agents);
 		if (inQueue.isEmpty())
 			return;
 			
-		while (!inQueue.isEmpty())
-			agents.add(inQueue.poll());
+		Agent msg;
+		while ((msg = inQueue.poll()) != null)
+			agents.add(msg);
 	}
 	
 	/** transitions and generates messages as needed.
@@ -136,33 +249,65 @@ public class Node extends Thread
 	 */
 	private void transition()
 	{
+		int routed = prepareRouting();
+		if (routed >= 0)
+			finishRouting(routed, route(0, routed));
+	}
+	
+	/** Does the state portion of transition(), then draws a probability for each agent
+	 * and sorts them. Agents are then routed with route() and finishRouting().
+	 * Nodes with many agents are instead routed by RoutingKernel, without sorting.
+	 * @return the end of the range of agents [0, end) to pass to route(),
+	 * 		or -1 if this node does not send agents this round
+	 */
+	int prepareRouting()
+	{
+		//drop agents whose time to live ran out, if any of ours did
+		AgentWheel wheel = leader.getAgentWheel();
+		if (expiredAgents > 0)
+			dropExpired();
+		
 		//if we are sus
 		if (state == NodeState.SUSCEPTIBLE)
 		{
 			//if we have no agents && we are sus, do nothing
 			if (agents.isEmpty())
-				return;
+				return -1;
 			else
+			{
 				state = NodeState.INFECTED;
+				EventLog events = leader.getEventLog();
+				if (events != null)
+					events.infection(name, thisRound, agents.get(0).getOrigin());
+			}
 		}
 		if (state == NodeState.INFECTED)
 		{
 			sickCounter++;
 			if (sickCounter > RECOVERY_THRESHOLD)
+			{
 				state = NodeState.RECOVERED;
+				EventLog events = leader.getEventLog();
+				if (events != null)
+					events.recovery(name, thisRound, agents.size());
+			}
 			//if we are infected and have received no agents, generate one
 			else if (agents.isEmpty())
 			{
-				Agent agent = new Agent(name);
+				Agent agent = new Agent(name, thisRound);
+				agent.setHolder(this);
 				agents.add(agent);
+				if (wheel != null)
+					wheel.schedule(agent);
 			}
 		}
 		if (state == NodeState.RECOVERED)
 		{
 			//make a note of how many agents were removed
 			thrownAway += agents.size();
-			agents = new ArrayList<Agent>(); //throw away all received messages
-			return;
+			cancelAgents(wheel);
+			agents.clear(); //throw away all received messages
+			return -1;
 		}
 		if (state == NodeState.NONHUMAN)
 		{
@@ -170,8 +315,12 @@ public class Node extends Thread
 			//throw out agents, making a note of how many were removed
 			if (sanitationCounter > SANITATION_THRESHOLD)
 			{
+				EventLog events = leader.getEventLog();
+				if (events != null && !agents.isEmpty())
+					events.sanitation(name, thisRound, agents.size());
 				thrownAway += agents.size();
-				agents = new ArrayList<>();
+				cancelAgents(wheel);
+				agents.clear();
 				sanitationCounter = 0;
 			}
 		}
@@ -179,58 +328,203 @@ public class Node extends Thread
 		
 		//if we have no outgoing edges, each agent we receive stays...
 		if (outEdges.size() == 0)
-			return;
+			return -1;
+		
+		//nodes with many agents skip the sort and route in batches
+		if (routeTo.length < agents.size() && (pullDelivery || agents.size() >= BATCH_ROUTING_THRESHOLD))
+			routeTo = new int[agents.size()];
+		if (agents.size() >= BATCH_ROUTING_THRESHOLD)
+		{
+			batchRouted = true;
+			return agents.size();
+		}
+		batchRouted = false;
 		
 		//associate each agent with a probability, and sort
+		long roundStream = SplitMix.stream(stream, thisRound);
 		for (int i = 0; i < agents.size(); i++)
 		{
-			double randNum = ThreadLocalRandom.current().nextDouble();
+			double randNum = SplitMix.uniform(roundStream, i);
 			agents.get(i).setProbability(randNum);
 		}
-		agents.sort(new AgentComparator());
+		agents.sort(AGENT_ORDER);
 		
-		//clear the msgsSent counter
-		msgsSent = 0;
+		//agents above the last link's upper bound stay here; find the first of them
+		double lastHigh = outEdges.get(outEdges.size() - 1).getProbHigh();
+		int low = 0;
+		int high = agents.size();
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (agents.get(mid).getProbablity() > lastHigh)
+				high = mid;
+			else
+				low = mid + 1;
+		}
+		return low;
+	}
+	
+	/** Sends the (sorted) agents in [from, to) along their links (with pull delivery,
+	 * records their links in routeTo instead). Similar to merge in mergesort, but starts
+	 * at the link the first agent uses, so disjoint ranges may be routed concurrently.
+	 * precondition: prepareRouting() returned a value >= to
+	 * @return the number of agents sent
+	 */
+	int route(int from, int to)
+	{
+		if (from >= to)
+			return 0;
+		if (batchRouted)
+			return routeBatch(from, to);
 		
-		//determine which agent will use which link (similar to merge in mergesort)
-		ArrayList<Agent> staying = new ArrayList<>();
-		int agentPtr = 0;
+		//find the link the first agent in the range will use
+		double first = agents.get(from).getProbablity();
 		int linkPtr = 0;
-		while (agentPtr < agents.size())
+		int high = outEdges.size() - 1;
+		while (linkPtr < high)
+		{
+			int mid = (linkPtr + high) >>> 1;
+			if (first > outEdges.get(mid).getProbHigh())
+				linkPtr = mid + 1;
+			else
+				high = mid;
+		}
+		
+		//determine which agent will use which link
+		int sent = 0;
+		for (int agentPtr = from; agentPtr < to; agentPtr++)
 		{
 			Agent thisAgent = agents.get(agentPtr);
 			Link thisLink = outEdges.get(linkPtr);
 			double probability = thisAgent.getProbablity();
-			if (probability > thisLink.getProbHigh())
+			while (probability > thisLink.getProbHigh())
 			{
 				linkPtr++;
-				//if no more links, the remaining agents must be staying here
-				if (linkPtr >= outEdges.size())
-				{
-					for (int i = agentPtr; i < agents.size(); i++)
-						staying.add(agents.get(i));
-					break; //exit the while loop
-				}
+				thisLink = outEdges.get(linkPtr);
 			}
-			else //(probability <= thisLink.getProbHigh())
-			{
-				agentPtr++;
-//				System.out.println("I am " + name + " and I am sending an agent to " + 
-//						thisLink.getDestination().getNodeName());
+//			System.out.println("I am " + name + " and I am sending an agent to " + 
+//					thisLink.getDestination().getNodeName());
+			if (pullDelivery)
+				routeTo[agentPtr] = linkPtr; //posted by finishRouting
+			else
 				thisLink.getDestination().recieveMessage(thisAgent);
-				msgsSent++;
+			sent++;
+		}
+		return sent;
+	}
+	
+	/** Draws for the agents in [from, to) in bulk and sends each along the link
+	 * RoutingKernel picks for it. Agents that stay are marked in routeTo.
+	 * @return the number of agents sent
+	 */
+	private int routeBatch(int from, int to)
+	{
+		int degree = outEdges.size();
+		double[] draws = RoutingKernel.drawBuffer(to - from);
+		long roundStream = SplitMix.stream(stream, thisRound);
+		RoutingKernel.route(bounds, degree, roundStream, draws, routeTo, from, to - from);
+		
+		int sent = 0;
+		for (int i = from; i < to; i++)
+		{
+			int link = routeTo[i];
+			if (link < degree)
+			{
+				if (!pullDelivery) //otherwise posted by finishRouting
+					outEdges.get(link).getDestination().recieveMessage(agents.get(i));
+				sent++;
 			}
 		}
-		agents = staying; //the current list of agents should be only those that are staying
+		return sent;
 	}
 	
-	/** reports needed statistics to the leader using a StatBundle **/
+	/** Removes the agents AgentWheel has marked as expired, keeping the others in order **/
+	private void dropExpired()
+	{
+		int kept = 0;
+		for (int i = 0; i < agents.size(); i++)
+		{
+			Agent agent = agents.get(i);
+			if (!agent.isExpired())
+				agents.set(kept++, agent);
+		}
+		for (int i = agents.size() - 1; i >= kept; i--)
+			agents.remove(i);
+		expiredAgents = 0;
+	}
+	
+	/** Takes the agents about to be thrown away out of the wheel, if there is one **/
+	private void cancelAgents(AgentWheel wheel)
+	{
+		if (wheel == null)
+			return;
+		for (int i = 0; i < agents.size(); i++)
+			wheel.cancel(agents.get(i));
+	}
+	
+	/** Removes the routed agents, leaving only those that are staying.
+	 * Stayers are compacted to the front of agents in place.
+	 * @param routed the value returned by prepareRouting()
+	 * @param sent the total returned by route() over [0, routed)
+	 */
+	void finishRouting(int routed, int sent)
+	{
+		msgsSent = sent;
+		//with pull delivery, each routed agent is left in its link's outbox
+		if (pullDelivery)
+		{
+			int degree = outEdges.size();
+			for (int i = 0; i < routed; i++)
+			{
+				if (routeTo[i] < degree)
+					outEdges.get(routeTo[i]).post(agents.get(i));
+			}
+		}
+		
+		int kept = 0;
+		if (batchRouted)
+		{
+			int degree = outEdges.size();
+			for (int i = 0; i < routed; i++)
+			{
+				if (routeTo[i] == degree)
+					agents.set(kept++, agents.get(i));
+			}
+		}
+		else //the stayers are the agents after the routed prefix
+		{
+			for (int i = routed; i < agents.size(); i++)
+				agents.set(kept++, agents.get(i));
+		}
+		
+		//the current list of agents should be only those that are staying
+		for (int i = agents.size() - 1; i >= kept; i--)
+			agents.remove(i);
+	}
+	
+	/** A rough measure of the work transition() will do this round,
+	 * used by RoundEngine to balance nodes across workers.
+	 * precondition: recieveMessages has already been called for this round
+	 */
+	int workEstimate()
+	{
+		return 1 + agents.size() + outEdges.size();
+	}
+	
+	/** reports needed statistics to the leader using this round's StatBundle **/
 	private void reportStats()
 	{
-		StatBundle report = new StatBundle(name, state, sickCounter,
-				agents.size(), thrownAway, msgsSent);
+		StatBundle report = reports[thisRound & 1];
+		report.update(name, state, sickCounter, agents.size(), thrownAway, msgsSent);
 		leader.recieveMessage(report);
 	}
+	
+	/** reports this round's statistics and moves on to the next round **/
+	void finishRound()
+	{
+		reportStats();
+		thisRound++;
+	}
 
 	
 	@Override
@@ -245,11 +539,9 @@ public class Node extends Thread
 
 				receiveMessages();
 				transition();
-				reportStats();
-				thisRound++;
+				finishRound();
 
-				while (leader.getUniversalRound() < thisRound)
-					sleep(50);
+				leader.awaitRound(thisRound);
 			}
 		} 
 		catch (Exception e)
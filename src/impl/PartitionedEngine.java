@@ -0,0 +1,534 @@
+/**PartitionedEngine.java runs a simulation as CompactEngine does, for hosts with more than
+ * one memory node (multi-socket machines), where memory written by a thread on another
+ * socket costs far more to read than memory of one's own. CompactEngine keeps every node's
+ * state in shared arrays and lets any worker take any range of nodes, so most of a round's
+ * reads on such a host are remote.
+ * 
+ * Here the nodes are split into contiguous partitions, balanced by nodes plus edges, and
+ * each partition has a worker thread of its own for the whole run. The worker allocates
+ * its partition's arrays itself (states, counters, agents, a copy of its nodes' edges and
+ * weights, and the flow slots of its out-edges) before the first round, so with first-touch
+ * placement they are in the memory of the socket it runs on, and only it ever touches them.
+ * Nothing is stolen: a worker computes its own partition every round, even if it finishes
+ * early. The flow slots of each partition's out-edges are grouped by the partition of their
+ * target, in one array per target partition. At the start of each round each worker copies
+ * the arrays the other partitions filled for it into its own memory, one bulk copy per
+ * partition, and then reads only its own memory for the rest of the round. Which agents
+ * go where is unchanged, so the output is the same as CompactEngine's for the same seed.
+ * 
+ * Java can neither find the host's memory nodes nor pin a thread to a core, so there are
+ * as many partitions as workers, not as sockets, and the placement is only as good as the
+ * operating system's: a worker the scheduler moves to another socket leaves its memory
+ * behind. Running the JVM with -XX:+UseNUMA (so each thread allocates from its own node)
+ * and under numactl (to keep it to chosen sockets) makes that unlikely. getReport() gives
+ * each partition's local and remote accesses and how long it worked and waited.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package impl;
+
+import java.util.concurrent.Phaser;
+
+import util.EventLog;
+import util.NodeState;
+import util.NodeTable;
+import util.RoundTally;
+import util.RoutingKernel;
+import util.SplitMix;
+import util.Topology;
+
+public class PartitionedEngine
+{
+	private Topology graph;
+	private Leader leader;
+	private long seed;
+	private Partition[] partitions;
+	//the workers and the caller, as each round begins and ends. Both are terminated if a
+	//worker fails, which releases whoever is waiting on them, now or later
+	private Phaser rounds;
+	private Phaser phases; //the workers, between the two phases of a round
+	private volatile Throwable failure; //what stopped a worker, if one failed
+	private int round; //the round being computed, set before a round begins
+	private boolean stopping; //set before a round begins, to stop the workers
+	private int roundsComputed;
+	
+	//the plan of the partitions, kept only until each worker has copied its part of it
+	private NodeState[] initialStates;
+	private int[] partitionOf; //partitionOf[u] is the partition of node u
+	private int[] slotOf; //slotOf[e] is the flow slot of edge e, in its target partition's array
+	private int[][] slotCounts; //slotCounts[p][q] is the number of edges from p to q
+	
+	/**Makes an engine over the given graph, and starts its workers, which allocate their
+	 * partitions before this returns
+	 * 
+	 * @param graph the topology of the simulation, weighted, with fewer than 2^31 edges
+	 * @param states the state of each node at the start
+	 * @param leader the leader to report to. This should NOT be started as a thread
+	 * @param seed the seed of the run; node i + 1 draws from SplitMix.stream(seed, i + 1)
+	 * 		as Node.setSeed(seed) would
+	 * @param numPartitions the number of partitions, each with a worker thread
+	 */
+	public PartitionedEngine(Topology graph, NodeState[] states, Leader leader, long seed,
+			int numPartitions)
+	{
+		if (graph.getNumEdges() > Integer.MAX_VALUE)
+			throw new IllegalArgumentException(graph.getNumEdges() + " edges is too many to partition");
+		this.graph = graph;
+		this.leader = leader;
+		this.seed = seed;
+		graph.indexInEdges();
+		int n = graph.getNumNodes();
+		numPartitions = Math.max(1, Math.min(numPartitions, n));
+		leader.setNumNodes(n);
+		plan(states, numPartitions);
+		
+		rounds = new Phaser(numPartitions + 1);
+		phases = new Phaser(numPartitions);
+		for (int p = 0; p < numPartitions; p++)
+		{
+			Thread worker = new Thread(partitions[p], "partition-" + p);
+			worker.setDaemon(true);
+			worker.start();
+		}
+		awaitWorkers(); //every partition is allocated
+		initialStates = null;
+		partitionOf = null;
+		slotOf = null;
+		slotCounts = null;
+	}
+	
+	/** Splits the nodes into partitions with about the same number of nodes plus edges
+	 * (in and out), and gives every edge its flow slot
+	 */
+	private void plan(NodeState[] states, int numPartitions)
+	{
+		int n = graph.getNumNodes();
+		long total = work(n);
+		partitions = new Partition[numPartitions];
+		int low = 0;
+		for (int p = 0; p < numPartitions; p++)
+		{
+			//the first node whose prefix of work reaches this partition's share
+			long share = total * (p + 1) / numPartitions;
+			int lo = low;
+			int hi = n;
+			while (lo < hi)
+			{
+				int mid = (lo + hi) >>> 1;
+				if (work(mid) < share)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			int high = (p == numPartitions - 1) ? n : Math.max(lo, low + 1);
+			high = Math.min(high, n - (numPartitions - 1 - p)); //leave a node for each partition after
+			partitions[p] = new Partition(p, low, high);
+			low = high;
+		}
+		
+		initialStates = states;
+		partitionOf = new int[n];
+		for (int p = 0; p < numPartitions; p++)
+			for (int u = partitions[p].low; u < partitions[p].high; u++)
+				partitionOf[u] = p;
+		slotOf = new int[(int) graph.getNumEdges()];
+		slotCounts = new int[numPartitions][numPartitions];
+		for (int u = 0; u < n; u++)
+		{
+			int[] counts = slotCounts[partitionOf[u]];
+			for (long e = graph.edgeStart(u); e < graph.edgeEnd(u); e++)
+				slotOf[(int) e] = counts[partitionOf[graph.target(e)]]++;
+		}
+	}
+	
+	/** @return the nodes and edges (in and out) of the nodes before u **/
+	private long work(int u)
+	{
+		return u + graph.edgeStart(u) + graph.inEdgeStart(u);
+	}
+	
+	/** Runs rounds until the leader decides to stop, then stops the workers **/
+	public void run()
+	{
+		try
+		{
+			leader.beginSimulation();
+			for (int round = 0; leader.continueSimulation(); round++)
+				leader.completeRound(computeRound(round));
+			leader.endSimulation();
+		}
+		catch (Exception e)
+		{
+			System.out.println("Exception in partitioned engine.");
+			e.printStackTrace();
+		}
+		finally
+		{
+			shutdown();
+		}
+	}
+	
+	/** Has every worker compute its partition's part of a round
+	 * @return the tally of the nodes at the end of the round
+	 */
+	private RoundTally computeRound(int round)
+	{
+		this.round = round;
+		awaitWorkers(); //the round begins
+		awaitWorkers(); //and ends
+		roundsComputed++;
+		RoundTally tally = new RoundTally();
+		for (int p = 0; p < partitions.length; p++)
+			tally.add(partitions[p].tally);
+		return tally;
+	}
+	
+	/** Stops the workers, which are waiting for the next round (unless one has failed) **/
+	private void shutdown()
+	{
+		stopping = true;
+		if (!rounds.isTerminated())
+			rounds.arriveAndAwaitAdvance();
+	}
+	
+	/** Waits for the workers to reach the next step of the rounds along with the caller
+	 * @throws IllegalStateException if a worker has failed, rather than waiting forever
+	 */
+	private void awaitWorkers()
+	{
+		if (rounds.arriveAndAwaitAdvance() < 0)
+			throw new IllegalStateException("A partition's worker failed", failure);
+	}
+	
+	/** Records that a worker failed and terminates the phasers, so that no one waits on it **/
+	private void fail(Throwable cause)
+	{
+		if (failure == null)
+			failure = cause;
+		phases.forceTermination();
+		rounds.forceTermination();
+	}
+	
+	/** @return the leader's event stream, or null if there's none **/
+	private EventLog events()
+	{
+		return leader.getEventLog();
+	}
+	
+	/** @return each partition's size, accesses and time, and the totals over all of them **/
+	public String getReport()
+	{
+		StringBuilder report = new StringBuilder();
+		long local = 0;
+		long remote = 0;
+		long copies = 0;
+		for (int p = 0; p < partitions.length; p++)
+		{
+			Partition partition = partitions[p];
+			local += partition.localAccesses;
+			remote += partition.remoteAccesses;
+			copies += partition.copies;
+			report.append("Partition " + p + ": nodes " + (partition.low + 1) + " => " + partition.high
+					+ ", " + partition.offsets[partition.offsets.length - 1] + " out-edges, "
+					+ partition.inbox.length + " in-edges from other partitions. "
+					+ partition.localAccesses + " local accesses, " + partition.remoteAccesses
+					+ " remote (in " + partition.copies + " copies). Worked "
+					+ partition.workNanos / 1000000 + " ms, waited " + partition.waitNanos / 1000000
+					+ " ms\n");
+		}
+		double fraction = (local + remote == 0) ? 0 : (double) remote / (local + remote);
+		report.append(roundsComputed + " rounds: " + local + " local accesses, " + remote
+				+ " remote in " + copies + " copies (" + fraction * 100 + "% remote)");
+		return report.toString();
+	}
+	
+	/** A range of nodes, the memory it owns, and the worker that computes it **/
+	private class Partition implements Runnable
+	{
+		private int index;
+		private int low; //the first node
+		private int high; //one past the last node
+		
+		//indexed by u - low
+		private byte[] states;
+		private byte[] sickCounters;
+		private byte[] sanitationCounters;
+		private int[] agents;
+		private int[] thrownAway;
+		
+		//the partition's out-edges: offsets[u - low] is node u's first, indexing the rest
+		private int[] offsets;
+		private double[] bounds;
+		private int[] targetPartition;
+		private int[] slot;
+		private int[][] flow; //flow[q] holds the flow slots of the edges to partition q
+		
+		//the partition's in-edges, in the order of the graph's in-edge index
+		private int[] inOffsets; //inOffsets[v - low] is node v's first
+		private int[] inSlot; //the slot in flow[index] if >= 0, else the slot -1 - it in inbox
+		private long firstInEdge; //the graph's number of this partition's first in-edge
+		private int[] inbox; //the other partitions' flows to this one, copied each round
+		private int[] inboxStart; //where each partition's flow is copied to in inbox
+		
+		private RoundTally tally; //of the last round
+		private long localAccesses; //agent-counting accesses to this partition's memory
+		private long remoteAccesses; //reads of other partitions' memory
+		private long copies; //bulk copies the remote reads were made in
+		private long workNanos;
+		private long waitNanos;
+		
+		Partition(int index, int low, int high)
+		{
+			this.index = index;
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		public void run()
+		{
+			boolean stopped = false; //normally, rather than by a failure
+			try
+			{
+				allocate();
+				rounds.arriveAndAwaitAdvance();
+				while (true)
+				{
+					long waitStart = System.nanoTime();
+					if (rounds.arriveAndAwaitAdvance() < 0)
+						break; //another worker failed
+					if (stopping)
+					{
+						stopped = true;
+						break;
+					}
+					long start = System.nanoTime();
+					receive(round);
+					long middle = System.nanoTime();
+					if (phases.arriveAndAwaitAdvance() < 0)
+						break;
+					long restart = System.nanoTime();
+					tally = transition(round);
+					long end = System.nanoTime();
+					workNanos += (middle - start) + (end - restart);
+					waitNanos += (start - waitStart) + (restart - middle);
+					if (rounds.arriveAndAwaitAdvance() < 0)
+						break;
+				}
+			}
+			catch (Throwable e) //Errors too (e.g. running out of memory allocating), or no one is told
+			{
+				System.out.println("Exception in partition " + index + ".");
+				e.printStackTrace();
+				fail(e);
+			}
+			finally
+			{
+				if (!stopped)
+					fail(new IllegalStateException("Partition " + index + " stopped"));
+			}
+		}
+		
+		/** Makes the partition's arrays on this (its worker's) thread, from the engine's plan **/
+		private void allocate()
+		{
+			int size = high - low;
+			states = new byte[size];
+			sickCounters = new byte[size];
+			sanitationCounters = new byte[size];
+			agents = new int[size];
+			thrownAway = new int[size];
+			for (int i = 0; i < size; i++)
+				states[i] = (byte) initialStates[low + i].ordinal();
+			
+			long edgeBase = graph.edgeStart(low);
+			int numEdges = (int) (graph.edgeStart(high) - edgeBase);
+			offsets = new int[size + 1];
+			bounds = new double[numEdges];
+			targetPartition = new int[numEdges];
+			slot = new int[numEdges];
+			for (int i = 0; i <= size; i++)
+				offsets[i] = (int) (graph.edgeStart(low + i) - edgeBase);
+			for (int j = 0; j < numEdges; j++)
+			{
+				long e = edgeBase + j;
+				bounds[j] = graph.bound(e);
+				targetPartition[j] = partitionOf[graph.target(e)];
+				slot[j] = slotOf[(int) e];
+			}
+			flow = new int[partitions.length][];
+			for (int q = 0; q < partitions.length; q++)
+				flow[q] = new int[slotCounts[index][q]];
+			
+			inboxStart = new int[partitions.length];
+			int remote = 0;
+			for (int p = 0; p < partitions.length; p++)
+			{
+				inboxStart[p] = remote;
+				if (p != index)
+					remote += slotCounts[p][index];
+			}
+			inbox = new int[remote];
+			firstInEdge = graph.inEdgeStart(low);
+			int numInEdges = (int) (graph.inEdgeStart(high) - firstInEdge);
+			inOffsets = new int[size + 1];
+			inSlot = new int[numInEdges];
+			for (int i = 0; i <= size; i++)
+				inOffsets[i] = (int) (graph.inEdgeStart(low + i) - firstInEdge);
+			for (int j = 0; j < numInEdges; j++)
+			{
+				long e = graph.inEdge(firstInEdge + j);
+				int p = partitionOf[graph.source(e)];
+				inSlot[j] = (p == index) ? slotOf[(int) e] : -1 - (inboxStart[p] + slotOf[(int) e]);
+			}
+		}
+		
+		/** Phase one: copies the other partitions' flows to this one, then each node
+		 * collects the agents sent to it last round
+		 */
+		private void receive(int round)
+		{
+			for (int p = 0; p < partitions.length; p++)
+			{
+				if (p == index)
+					continue;
+				int[] sent = partitions[p].flow[index];
+				if (sent.length == 0)
+					continue;
+				System.arraycopy(sent, 0, inbox, inboxStart[p], sent.length);
+				remoteAccesses += sent.length;
+				copies++;
+			}
+			
+			int[] own = flow[index];
+			localAccesses += inSlot.length;
+			for (int i = 0; i < high - low; i++)
+			{
+				int received = 0;
+				int first = -1; //the first in-edge that carried an agent
+				for (int j = inOffsets[i]; j < inOffsets[i + 1]; j++)
+				{
+					int s = inSlot[j];
+					int sent = (s >= 0) ? own[s] : inbox[-1 - s];
+					if (sent > 0 && first == -1)
+						first = j;
+					received += sent;
+				}
+				if (received == 0)
+					continue;
+				agents[i] += received;
+				
+				//as in CompactEngine, the origin logged is the node that sent the first agent
+				EventLog events = events();
+				if (events != null && states[i] == NodeTable.SUSCEPTIBLE)
+					events.infection(low + i + 1, round, graph.source(graph.inEdge(firstInEdge + first)) + 1);
+			}
+		}
+		
+		/** Phase two: each node changes state as CompactEngine.transition() has it, then
+		 * routes its agents
+		 * @return the tally of the partition's nodes
+		 */
+		private RoundTally transition(int round)
+		{
+			RoundTally tally = new RoundTally();
+			EventLog events = events();
+			for (int i = 0; i < high - low; i++)
+			{
+				int u = low + i;
+				int start = offsets[i];
+				int degree = offsets[i + 1] - start;
+				for (int j = start; j < start + degree; j++)
+					flow[targetPartition[j]][slot[j]] = 0;
+				localAccesses += degree;
+				
+				byte state = states[i];
+				int held = agents[i];
+				int removed = thrownAway[i];
+				boolean routes = true;
+				
+				if (state == NodeTable.SUSCEPTIBLE)
+				{
+					if (held == 0)
+						routes = false;
+					else
+						state = NodeTable.INFECTED;
+				}
+				if (state == NodeTable.INFECTED)
+				{
+					int sickCounter = sickCounters[i] + 1;
+					sickCounters[i] = (byte) sickCounter;
+					if (sickCounter > Node.RECOVERY_THRESHOLD)
+					{
+						state = NodeTable.RECOVERED;
+						if (events != null)
+							events.recovery(u + 1, round, held);
+					}
+					//if we are infected and have received no agents, generate one
+					else if (held == 0)
+						held = 1;
+				}
+				if (state == NodeTable.RECOVERED)
+				{
+					removed += held;
+					held = 0;
+					routes = false;
+				}
+				if (state == NodeTable.NONHUMAN)
+				{
+					int sanitationCounter = sanitationCounters[i] + 1;
+					if (sanitationCounter > Node.SANITATION_THRESHOLD)
+					{
+						if (events != null && held > 0)
+							events.sanitation(u + 1, round, held);
+						removed += held;
+						held = 0;
+						sanitationCounter = 0;
+					}
+					sanitationCounters[i] = (byte) sanitationCounter;
+				}
+				
+				//agent k takes the edge its draw picks, as with RoutingKernel.route()
+				int sent = 0;
+				if (routes && degree > 0)
+				{
+					long roundStream = SplitMix.stream(SplitMix.stream(seed, u + 1), round);
+					for (int k = 0; k < held; k++)
+					{
+						int edge = RoutingKernel.findLink(bounds, start, start + degree,
+								SplitMix.uniform(roundStream, k));
+						if (edge < degree)
+						{
+							flow[targetPartition[start + edge]][slot[start + edge]]++;
+							sent++;
+						}
+					}
+					localAccesses += sent;
+					held -= sent;
+				}
+				
+				states[i] = state;
+				agents[i] = held;
+				thrownAway[i] = removed;
+				tally.add(NodeTable.unpack(state), held, removed, sent);
+			}
+			return tally;
+		}
+	}
+}
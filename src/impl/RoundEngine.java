@@ -0,0 +1,349 @@
+/**RoundEngine.java runs the nodes of a simulation on a fork/join pool instead
+ * of as one thread per node. Each round has two phases separated by a barrier:
+ * every node first receives the agents sent to it last round, then every node
+ * transitions and reports to the leader. The second phase is split by the amount
+ * of work each node has (agents + degree) rather than by node count, so hub nodes
+ * get leaf tasks of their own, and a hub with many agents has its routing split
+ * into sub-tasks. Idle workers steal whatever is left.
+ * 
+ * With pull delivery, senders don't push agents into their destinations' queues.
+ * Each sender leaves its agents in the outboxes of its own links, and in the next
+ * receive phase each node collects from the links that point to it (a reverse index
+ * built once, up front). No two tasks ever write to the same place, so neither phase
+ * has any write contention.
+ * 
+ * The graph may also change over time, as given by a ContactStream. Each round's
+ * additions and removals are applied between the receive and transition phases,
+ * and only the nodes whose links changed have their links renormalized.
+ * 
+ * Rounds may also be pipelined (see RoundPipeline): the leader processes and writes
+ * each round's StatBundles while the nodes compute the next round.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.DataFormatException;
+
+import util.ContactStream;
+import util.Link;
+import util.StatBundle;
+
+public class RoundEngine
+{
+	private final static int RECEIVE_GRAIN = 1024; //nodes per leaf task when receiving
+	private final static int NODE_GRAIN = 4096; //work units (see Node.workEstimate) per leaf task
+	private final static int ROUTING_GRAIN = 2048; //agents per leaf task when splitting a hub
+	
+	private Node[] nodes;
+	private Leader leader;
+	private ForkJoinPool pool;
+	private int[] work; //work estimate of each node this round
+	private long[] prefixWork; //prefixWork[i] = total work of nodes [0, i)
+	private ContactStream contacts; //changes to the graph over time, or null if static
+	private double stay; //stay probability, for reweighting nodes whose links change
+	private boolean[] linksChanged; //nodes whose links changed this round
+	private int[] changedNodes; //the first numChanged of these are those nodes
+	private boolean pipelined; //overlap the leader's work on each round with the next round
+	
+	/**Makes an engine over the given nodes
+	 * 
+	 * @param nodes the nodes of the simulation. These should NOT be started as threads
+	 * @param leader the leader the nodes report to. This should NOT be started as a thread
+	 * @param parallelism the number of worker threads to use
+	 * @param pullDelivery if true, deliver agents by pull rather than push
+	 */
+	public RoundEngine(Node[] nodes, Leader leader, int parallelism, boolean pullDelivery)
+	{
+		this.nodes = nodes;
+		this.leader = leader;
+		pool = new ForkJoinPool(parallelism);
+		work = new int[nodes.length];
+		prefixWork = new long[nodes.length + 1];
+		if (pullDelivery)
+			indexInEdges();
+	}
+	
+	public RoundEngine(Node[] nodes, Leader leader, boolean pullDelivery)
+	{
+		this(nodes, leader, Runtime.getRuntime().availableProcessors(), pullDelivery);
+	}
+	
+	/** Makes the graph change over time
+	 * @param contacts the timestamped edge additions and removals to apply
+	 * @param stay the probability that an agent will stay within a node
+	 */
+	public void setContactStream(ContactStream contacts, double stay)
+	{
+		this.contacts = contacts;
+		this.stay = stay;
+		linksChanged = new boolean[nodes.length];
+		changedNodes = new int[nodes.length];
+	}
+	
+	/** Sets whether the leader completes each round while the next one is computed.
+	 * Ignored if the leader is logging events, since an over-run round's can't be discarded
+	 */
+	public void setPipelined(boolean pipelined)
+	{
+		this.pipelined = pipelined;
+	}
+	
+	/** builds the reverse (in-edge) index of the nodes and switches them to pull delivery **/
+	private void indexInEdges()
+	{
+		ArrayList<ArrayList<Link>> inEdges = new ArrayList<>(nodes.length);
+		for (int i = 0; i < nodes.length; i++)
+			inEdges.add(new ArrayList<Link>());
+		//nodes are named 1 => n, in order
+		for (int i = 0; i < nodes.length; i++)
+		{
+			ArrayList<Link> outEdges = nodes[i].getEdges();
+			for (int j = 0; j < outEdges.size(); j++)
+			{
+				Link link = outEdges.get(j);
+				inEdges.get(link.getDestination().getNodeName() - 1).add(link);
+			}
+		}
+		for (int i = 0; i < nodes.length; i++)
+			nodes[i].setPullDelivery(inEdges.get(i));
+	}
+	
+	/** Runs rounds until the leader decides to stop, then shuts down the pool **/
+	public void run()
+	{
+		try
+		{
+			leader.beginSimulation();
+			if (pipelined && leader.getEventLog() == null)
+			{
+				RoundPipeline pipeline = new RoundPipeline();
+				for (int round = 0; ; round++)
+				{
+					computeRound(round);
+					final Deque<StatBundle> reports = leader.takeReports();
+					boolean submitted = pipeline.submit(new Callable<Boolean>()
+					{
+						@Override
+						public Boolean call()
+						{
+							return leader.completeRound(reports);
+						}
+					});
+					if (!submitted)
+						break;
+				}
+				pipeline.finish();
+			}
+			else
+			{
+				for (int round = 0; leader.continueSimulation(); round++)
+				{
+					computeRound(round);
+					leader.completeRound();
+				}
+			}
+			leader.endSimulation();
+		}
+		catch (Exception e)
+		{
+			System.out.println("Exception in round engine.");
+			e.printStackTrace();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+	
+	/** Runs both phases of a round; the nodes report to the leader as they finish **/
+	private void computeRound(int round) throws IOException, DataFormatException
+	{
+		if (leader.getAgentWheel() != null)
+			leader.getAgentWheel().expire(round);
+		pool.invoke(new ReceiveTask(0, nodes.length));
+		if (contacts != null)
+			applyContacts(round);
+		
+		//balance the transition phase by the work each node now has
+		for (int i = 0; i < nodes.length; i++)
+			prefixWork[i + 1] = prefixWork[i] + work[i];
+		pool.invoke(new TransitionTask(0, nodes.length));
+	}
+	
+	/** Applies the additions and removals of edges that happen by the given round,
+	 * then renormalizes the links of just the nodes that were affected.
+	 * Done between phases, so no node is using its links (or outboxes).
+	 */
+	private void applyContacts(int round) throws IOException, DataFormatException
+	{
+		int numChanged = 0;
+		while (contacts.next(round))
+		{
+			//nodes are named 1 => n, in order
+			int source = contacts.getSource() - 1;
+			int destination = contacts.getDestination() - 1;
+			if (source < 0 || source >= nodes.length || destination < 0 || destination >= nodes.length)
+				throw new DataFormatException("Contact between nodes that don't exist: "
+						+ contacts.getSource() + " -> " + contacts.getDestination());
+			
+			Node node = nodes[source];
+			Link changed;
+			if (contacts.isAddition())
+				changed = node.addEdge(nodes[destination]);
+			else
+				changed = node.removeEdge(nodes[destination]);
+			if (changed != null && !linksChanged[source])
+			{
+				linksChanged[source] = true;
+				changedNodes[numChanged++] = source;
+			}
+		}
+		
+		for (int i = 0; i < numChanged; i++)
+		{
+			int changed = changedNodes[i];
+			nodes[changed].reweightEdges(stay);
+			work[changed] = nodes[changed].workEstimate();
+			linksChanged[changed] = false;
+		}
+	}
+	
+	/** Transitions a single node, splitting its routing if it has many agents **/
+	private void transitionNode(Node node)
+	{
+		int routed = node.prepareRouting();
+		if (routed >= 0)
+		{
+			int sent;
+			if (routed > ROUTING_GRAIN)
+				sent = new RoutingTask(node, 0, routed).compute();
+			else
+				sent = node.route(0, routed);
+			node.finishRouting(routed, sent);
+		}
+		node.finishRound();
+	}
+	
+	/** Phase one: each node in [low, high) receives its messages **/
+	private class ReceiveTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private int low;
+		private int high;
+		
+		ReceiveTask(int low, int high)
+		{
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (high - low <= RECEIVE_GRAIN)
+			{
+				for (int i = low; i < high; i++)
+				{
+					nodes[i].receiveMessages();
+					work[i] = nodes[i].workEstimate();
+				}
+				return;
+			}
+			int mid = (low + high) >>> 1;
+			invokeAll(new ReceiveTask(low, mid), new ReceiveTask(mid, high));
+		}
+	}
+	
+	/** Phase two: each node in [low, high) transitions. Splits on work, not node count **/
+	private class TransitionTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private int low;
+		private int high;
+		
+		TransitionTask(int low, int high)
+		{
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			long total = prefixWork[high] - prefixWork[low];
+			if (high - low == 1 || total <= NODE_GRAIN)
+			{
+				for (int i = low; i < high; i++)
+					transitionNode(nodes[i]);
+				return;
+			}
+			
+			//find the node at which half of the work in this range is done
+			long half = prefixWork[low] + total / 2;
+			int left = low + 1;
+			int right = high - 1;
+			while (left < right)
+			{
+				int mid = (left + right) >>> 1;
+				if (prefixWork[mid] < half)
+					left = mid + 1;
+				else
+					right = mid;
+			}
+			invokeAll(new TransitionTask(low, left), new TransitionTask(left, high));
+		}
+	}
+	
+	/** Routes the agents [low, high) of a single (hub) node **/
+	private static class RoutingTask extends RecursiveTask<Integer>
+	{
+		private static final long serialVersionUID = 1L;
+		private Node node;
+		private int low;
+		private int high;
+		
+		RoutingTask(Node node, int low, int high)
+		{
+			this.node = node;
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		protected Integer compute()
+		{
+			if (high - low <= ROUTING_GRAIN)
+				return node.route(low, high);
+			
+			int mid = (low + high) >>> 1;
+			RoutingTask left = new RoutingTask(node, low, mid);
+			left.fork();
+			int sent = new RoutingTask(node, mid, high).compute();
+			return sent + left.join();
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/**RoundPipeline.java lets an engine start computing round r + 1 while the leader is
+ * still processing, writing and checking round r, instead of waiting for it. Each
+ * round's completion is handed to a single aggregating thread, so rounds are still
+ * completed one at a time and in order.
+ * 
+ * The round that runs while its predecessor is completed is speculative: if the leader
+ * then decides the simulation should have stopped, that round is discarded (it was
+ * never reported). The nodes' state is left one round ahead, which doesn't matter
+ * since the simulation is over. Anything a round does that can't be taken back, like
+ * logging events, rules out pipelining.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+class RoundPipeline
+{
+	private ExecutorService aggregator;
+	private Future<Boolean> previous; //the completion of the last round submitted
+	
+	RoundPipeline()
+	{
+		aggregator = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "round aggregator");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/** Hands a round that has just been computed to the leader, once the round before
+	 * it has been completed.
+	 * @param completion completes the round, e.g. by calling leader.completeRound(),
+	 * 		and returns true if the simulation should keep going
+	 * @return true if the round was submitted and the next one should be computed,
+	 * 		false if the last round was the final one (so this one was discarded)
+	 */
+	boolean submit(Callable<Boolean> completion) throws Exception
+	{
+		if (previous != null && !previous.get())
+			return false;
+		previous = aggregator.submit(completion);
+		return true;
+	}
+	
+	/** Waits for the last round submitted to be completed, then stops the aggregating thread **/
+	void finish() throws Exception
+	{
+		try
+		{
+			if (previous != null)
+				previous.get();
+		}
+		finally
+		{
+			aggregator.shutdown();
+		}
+	}
+}
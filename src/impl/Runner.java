@@ -22,26 +22,145 @@
 package impl;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
 
+import util.AgentWheel;
+import util.Centrality;
+import util.ContactStream;
+import util.EventLog;
+import util.ExecutionMode;
+import util.Graph;
 import util.IntegerComparator;
 import util.Link;
 import util.NodeState;
+import util.NodeStore;
+import util.NodeTable;
+import util.OutbreakMeasure;
+import util.OutcomeMonitor;
+import util.OffHeapGraph;
+import util.OffHeapNodeTable;
+import util.PlacementStrategy;
+import util.ReplicateAggregator;
+import util.ResultCache;
+import util.RoundListener;
+import util.SplitMix;
+import util.Topology;
 
 public class Runner {
 
 	public static int NUM_NODES = 5; //should be constant for the run
 	public static final double DEFAULT_AGENT_STAY_PROBABILITY = 0.78;
 	private static final int INFECT_X_NODES = 5; //number of nodes to infect
-	private static final int ENV_X_NODES = 50; //number of nodes to randomly set as environment
+	private static final int ENV_X_NODES = 50; //number of nodes to set as environment
+	private static final PlacementStrategy INFECTED_PLACEMENT = PlacementStrategy.RANDOM; //if not listed
+	private static final PlacementStrategy ENVIRONMENT_PLACEMENT = PlacementStrategy.RANDOM; //if not listed
+	private static final ExecutionMode EXECUTION_MODE = ExecutionMode.THREADS; //the original asynchronous model
+	private static final int SEQUENTIAL_BELOW = 4096; //WORK_STEALING, COMPACT: run smaller graphs on one thread
+	private static final boolean PULL_DELIVERY = true; //WORK_STEALING only: nodes pull their agents
+	private static final boolean PIPELINED_ROUNDS = true; //WORK_STEALING, COMPACT: write a round during the next
+	private static final boolean OFF_HEAP = false; //COMPACT only: keep the graph and nodes off the heap
+	private static final String OFF_HEAP_DIRECTORY = null; //if OFF_HEAP, map them to files here (or null)
+	private static final int PARTITIONS = 0; //PARTITIONED only: partitions (a worker each), or 0 for one per core
+	private static final int AGENT_TTL = -1; //rounds an agent lives before decaying, -1 for never (runs of Nodes only)
+	private static final String CONTACT_STREAM = null; //WORK_STEALING only: timestamped edge changes
+	private static final double SECONDS_PER_ROUND = 3600; //time covered by a round of CONTACT_STREAM
+	private static final String EVENT_LOG = null; //e.g. "output/events.bin" to log per-node events
+	private static final int REPLICATES = 1; //if > 1, summarize this many runs in output/summary.csv
+	private static final boolean BATCH_REPLICATES = false; //run REPLICATES 64 at a time, sharing the topology
+	private static final double[] PRECISION_TARGETS = null; //e.g. {0.02, 0.05, 0.05}: run fewer REPLICATES
+			//once the 95% CIs of final R, peak I and duration are within these fractions of their means
+	private static final int MIN_REPLICATES = 30; //run at least this many before checking PRECISION_TARGETS
+	private static final int[] SPLITTING_LEVELS = null; //e.g. {20, 40, 60} to estimate P(reaching 60)
+	private static final OutbreakMeasure SPLITTING_MEASURE = OutbreakMeasure.DURATION; //what they count
+	private static final int SPLITTING_EFFORT = 200; //trajectories run to each of SPLITTING_LEVELS
+	private static final long SEED = -1; //seed for a reproducible run, or -1 to pick one at random
+	private static final String RESULT_CACHE = "cache"; //where runs with a fixed SEED are cached, or null
+	private static final long RESULT_CACHE_BYTES = 256L << 20; //size of the cache before eviction
+	private static final int RESULT_CACHE_VERSION = 1; //raise whenever a change to the model alters runs' output
+	private static Object virtualBuilder; //Thread.Builder.OfVirtual, if the JVM has one
+	private static Method startVirtual; //Thread.Builder.start(Runnable)
+	private static boolean virtualProbed; //whether virtualBuilder has been looked up (found or not)
 	
 	
 	public static void main(String[] args)
 	{	
+		if (AGENT_TTL > 0 && ignoresAgentTtl())
+		{
+			System.out.println("AGENT_TTL is only honoured by runs of Nodes (THREADS, VIRTUAL_THREADS, "
+					+ "WORK_STEALING and REPLICATES), not by BATCH_REPLICATES, SPLITTING_LEVELS or "
+					+ EXECUTION_MODE);
+			return;
+		}
+		if (REPLICATES > 1)
+		{
+			try
+			{
+				ReplicateAggregator summary = new ReplicateAggregator();
+				runReplicates(new File("input/input_hires.txt"), REPLICATES, summary);
+				new File("output").mkdirs();
+				summary.writeSummary(new File("output/summary.csv"));
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+			}
+			return;
+		}
+		if (SPLITTING_LEVELS != null)
+		{
+			try
+			{
+				long seed = (SEED == -1) ? new Random().nextLong() : SEED;
+				Leader leader = new Leader(null);
+				leader.setVerbose(false);
+				File file = new File("input/input_hires.txt");
+				CompactEngine root = loadCompactSimulation(file, leader, seed, false,
+						runsSequentially(file) ? 1 : Runtime.getRuntime().availableProcessors());
+				SplittingEstimator estimator = new SplittingEstimator(root, SPLITTING_MEASURE,
+						SPLITTING_LEVELS, SPLITTING_EFFORT, seed);
+				double probability = estimator.estimate();
+				System.out.println("P(" + SPLITTING_MEASURE + " >= "
+						+ SPLITTING_LEVELS[SPLITTING_LEVELS.length - 1] + ") ~ " + probability
+						+ " (relative error " + estimator.getRelativeError() + ", "
+						+ estimator.getRoundsSimulated() + " rounds simulated)");
+				new File("output").mkdirs();
+				estimator.writeResults(new File("output/splitting.csv"));
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+			}
+			return;
+		}
+		
 		//make a leader
 		Leader leader = new Leader();
+		if (AGENT_TTL > 0)
+			leader.setAgentWheel(new AgentWheel(AGENT_TTL));
+		if (EVENT_LOG != null)
+		{
+			try
+			{
+				leader.setEventLog(new EventLog(new File(EVENT_LOG)));
+			}
+			catch (IOException e)
+			{
+				System.out.println("Exception thrown when opening event log");
+				e.printStackTrace();
+			}
+		}
 		
 		//determine how we are going to run the simulation
 		System.out.println("Run simulation using input file? y/n");
@@ -56,136 +175,55 @@ public class Runner {
 			File file = new File("input/input_hires.txt"); //needs to be changed later
 			try
 			{
-				Scanner scan = new Scanner(file);
-				scan.next(); //clear human tokens 
-				scan.next();
-				int n = scan.nextInt();
-				NUM_NODES = n;
-				
-				//parse to get indexes of those infected
-				scan.next();
-				scan.next();
-				String indexesofinfected = scan.nextLine();
-				//parse to get indexes of those recovered
-				scan.next();
-				scan.next();
-				String indexesofrecovered = scan.nextLine();
-				//parse to get indexes of those nonhuman
-				scan.next();
-				scan.next();
-				String indexesofnonhuman = scan.nextLine();
+				long seed = SEED;
+				if (seed == -1)
+					seed = new Random().nextLong();
+				System.out.println("Seed: " + seed);
 				
-				//convert string info to a list of indexes
-				ArrayList<Integer> infected = getNodesIndexes(indexesofinfected);
-				
-				//if no infected were chosen, randomly choose some
-				if (infected.size() == 0)
+				//a run can only be reused if it is reproducible
+				ResultCache cache = null;
+				String key = null;
+				if (RESULT_CACHE != null && isReproducible())
 				{
-					while (infected.size() < INFECT_X_NODES)
+					cache = new ResultCache(new File(RESULT_CACHE), RESULT_CACHE_BYTES);
+					key = resultCacheKey(file, seed);
+					byte[] cached = cache.get(key);
+					if (cached != null)
 					{
-						Integer infectedInd = (int)(Math.random() * n);
-						boolean contains = infected.contains(infectedInd);
-						if (!contains)
-							infected.add(infectedInd);
+						System.out.println("Found an identical run in the result cache");
+						leader.reuseOutput(cached);
+						return;
 					}
-					Collections.sort(infected);
 				}
 				
-				ArrayList<Integer> recovered = getNodesIndexes(indexesofrecovered);
-				
-				//if no env were chosen, randomly generate some
-				ArrayList<Integer> nonhuman = getNodesIndexes(indexesofnonhuman);
-				if (nonhuman.size() == 0)
+				if (runsSequentially(file))
+					loadCompactSimulation(file, leader, seed, true, 1).run();
+				else if (EXECUTION_MODE == ExecutionMode.COMPACT)
 				{
-					while (nonhuman.size() < ENV_X_NODES)
-					{
-						Integer nonHumInd = (int)(Math.random() * n);
-						//System.out.println()
-						boolean nonHumContains = nonhuman.contains(nonHumInd);
-						boolean infectedContains = infected.contains(nonHumInd);
-						if (!nonHumContains && !infectedContains)
-							nonhuman.add(nonHumInd);
-					}
-					Collections.sort(nonhuman);
+					CompactEngine engine = loadCompactSimulation(file, leader, seed, true,
+							Runtime.getRuntime().availableProcessors());
+					engine.setPipelined(PIPELINED_ROUNDS);
+					engine.run();
 				}
-				
-				//check to make sure we set the sizes right
-				if (infected.size() != INFECT_X_NODES || nonhuman.size() != ENV_X_NODES)
+				else if (EXECUTION_MODE == ExecutionMode.MEAN_FIELD)
+					loadMeanFieldSimulation(file, leader, seed, true).run();
+				else if (EXECUTION_MODE == ExecutionMode.PARTITIONED)
 				{
-					scan.close();
-					if (infected.size() != INFECT_X_NODES)
-						throw new Exception("incorrect number of infected");
-					//else
-					throw new Exception("incorrect number of environment");
+					PartitionedEngine engine = loadPartitionedSimulation(file, leader, seed, true,
+							(PARTITIONS > 0) ? PARTITIONS : Runtime.getRuntime().availableProcessors());
+					engine.run();
+					System.out.println(engine.getReport());
 				}
-				
-				//determine that the indexes have been read correctly
-				System.out.println("N = " + n + ", Infected indexes: ");
-				for (int i = 0; i < infected.size(); i++)
-					System.out.print(infected.get(i) + ", ");
-				System.out.println();
-				System.out.println("recovered indexes: ");
-				for (int i = 0; i < recovered.size(); i++)
-					System.out.print(recovered.get(i) + ", ");
-				System.out.println();
-				System.out.println("nonhuman indexes: ");
-				for (int i = 0; i < nonhuman.size(); i++)
-					System.out.print(nonhuman.get(i) + ", ");
-				System.out.println();
-				
-				//initialize nodes to their states
-				Node nodes[] = setNodeStates(n, leader, infected, recovered, nonhuman);
-				
-				//verify that node names and states were set correctly
-				System.out.println("Nodes and states: ");
-				for (int i = 0; i < nodes.length; i++)
+				else
 				{
-					Node node = nodes[i];
-//					System.out.print("Name: " + node.getNodeName());
-					if (node.getNodeState() == NodeState.INFECTED)
-						System.out.println("Name: " + node.getNodeName() + " , State == INFECTED");
-//					else if (node.getNodeState() == NodeState.SUSCEPTIBLE)
-//						System.out.print(" , State == SUSCEPTIBLE");
-//					else if (node.getNodeState() == NodeState.RECOVERED)
-//						System.out.print(" , State == RECOVERED");
-//					else
-//						System.out.print(" , State == NONHUMAN");
-//					System.out.println();
-					else if (node.getNodeState() == NodeState.NONHUMAN)
-						System.out.println("Name: " + node.getNodeName() + " , State == ENVIRONMENT");
+					Node[] nodes = loadSimulation(file, leader, seed, true);
+					
+					//start the simulation
+					launch(nodes, leader);
 				}
-				
-				//add links
-				while (scan.hasNextLine())
-				{
-					String line = scan.nextLine();
-					Scanner lineScanner = new Scanner(line);
-					int index = lineScanner.nextInt();
-					lineScanner.next(); // get rid of the :
-					ArrayList<Link> links = new ArrayList<>();
-					while (lineScanner.hasNext())
-					{
-						int destination = lineScanner.nextInt();
-						destination--; //since nodes are numbered 1=>n in the input files
-						Link edge = new Link(nodes[destination]);
-						links.add(edge);
-					}
-					Node node = nodes[index - 1]; //since nodes are numbered 1 => n
-					Link.weightEdges(links, DEFAULT_AGENT_STAY_PROBABILITY);
-
-					node.setEdges(links);
-					lineScanner.close();
-				}
-				scan.close();
-	
-				//set the number of nodes for the leader process
-				leader.setNumNodes(nodes.length);
-				
-				//start the simulation
-				leader.start();
-				for (int i = 0; i < nodes.length; i++)
-					nodes[i].start();
-				
+				//a run that failed (engines print their exceptions and return) has partial output
+				if (cache != null && leader.hasCompleted())
+					cache.put(key, leader.getOutput());
 			}
 			catch (Exception e)
 			{
@@ -237,16 +275,623 @@ public class Runner {
 			
 			//start executing the threads
 			leader.setNumNodes(5);
-			leader.start();
-			one.start();
-			two.start();
-			three.start();
-			four.start();
-			five.start();
+			Node[] nodes = {one, two, three, four, five};
+			launch(nodes, leader);
 		}
 	
 	}
 	
+	/** Reads an input file (adjacency list) and makes the nodes it describes,
+	 * randomly choosing infected and environment nodes if the file doesn't specify any.
+	 * The leader's number of nodes is set, but neither the leader nor the nodes are started.
+	 * @param file the input file
+	 * @param leader the leader of the nodes
+	 * @param seed the seed of all of the run's random choices
+	 * @param verbose if true, prints the chosen indexes and states
+	 * @return nodes[] the nodes of the simulation, with their edges set and weighted
+	 */
+	public static Node[] loadSimulation(File file, Leader leader, long seed, boolean verbose)
+			throws Exception
+	{
+		Scanner scan = new Scanner(file);
+		ArrayList<Integer> infected = new ArrayList<>();
+		ArrayList<Integer> recovered = new ArrayList<>();
+		ArrayList<Integer> nonhuman = new ArrayList<>();
+		int n = readHeader(scan, infected, recovered, nonhuman);
+		
+		//read the links into a CSR graph and weight it in bulk
+		final Graph graph = readGraph(scan, n, seed);
+		scan.close();
+		NodeState[] states = placeNodes(file, graph, seed, verbose, infected, recovered, nonhuman);
+		
+		//initialize nodes to their states
+		Node nodes[] = new Node[states.length];
+		for (int i = 0; i < nodes.length; i++)
+		{
+			nodes[i] = new Node(i + 1, states[i], leader);
+			nodes[i].setSeed(seed);
+		}
+		
+		//give each node its links
+		graph.forEachNode(new Graph.NodeAction()
+		{
+			@Override
+			public void apply(int u)
+			{
+				ArrayList<Link> links = new ArrayList<>((int) (graph.edgeEnd(u) - graph.edgeStart(u)));
+				double probLow = 0;
+				for (long e = graph.edgeStart(u); e < graph.edgeEnd(u); e++)
+				{
+					links.add(new Link(probLow, graph.bound(e), graph.weight(e), nodes[graph.target(e)]));
+					probLow = graph.bound(e);
+				}
+				nodes[u].setEdges(links);
+			}
+		});
+
+		//set the number of nodes for the leader process
+		leader.setNumNodes(nodes.length);
+		return nodes;
+	}
+	
+	/** Reads an input file as loadSimulation() does, making the same choices for the same
+	 * seed, but keeps the nodes in packed arrays for a CompactEngine instead of making Nodes.
+	 * If OFF_HEAP, the graph and the nodes are kept outside the Java heap
+	 * @param file the input file
+	 * @param leader the leader of the nodes
+	 * @param seed the seed of all of the run's random choices
+	 * @param verbose if true, prints the chosen indexes and states
+	 * @param parallelism the engine's number of threads, or 1 to run it on the calling thread
+	 * @return an engine ready to run the simulation
+	 */
+	public static CompactEngine loadCompactSimulation(File file, Leader leader, long seed,
+			boolean verbose, int parallelism) throws Exception
+	{
+		Scanner scan = new Scanner(file);
+		ArrayList<Integer> infected = new ArrayList<>();
+		ArrayList<Integer> recovered = new ArrayList<>();
+		ArrayList<Integer> nonhuman = new ArrayList<>();
+		int n = readHeader(scan, infected, recovered, nonhuman);
+		
+		File directory = null;
+		if (OFF_HEAP && OFF_HEAP_DIRECTORY != null)
+		{
+			directory = new File(OFF_HEAP_DIRECTORY);
+			directory.mkdirs();
+		}
+		Topology graph;
+		if (OFF_HEAP)
+		{
+			OffHeapGraph offHeap = OffHeapGraph.readAdjacency(scan, n, directory);
+			offHeap.weightEdges(DEFAULT_AGENT_STAY_PROBABILITY, SplitMix.stream(seed, -1)); //as readGraph()
+			graph = offHeap;
+		}
+		else
+			graph = readGraph(scan, n, seed);
+		scan.close();
+		
+		NodeState[] states = placeNodes(file, graph, seed, verbose, infected, recovered, nonhuman);
+		NodeStore table;
+		if (OFF_HEAP)
+			table = new OffHeapNodeTable(states, graph.getNumEdges(), directory);
+		else
+			table = new NodeTable(states, graph.getNumEdges());
+		return new CompactEngine(graph, table, leader, seed, parallelism);
+	}
+	
+	/** @return true if the run main() would make keeps no Agents, so can't give them a time
+	 * to live: a batch, a splitting estimate, or an engine of counts or masses
+	 */
+	private static boolean ignoresAgentTtl()
+	{
+		if (REPLICATES > 1)
+			return BATCH_REPLICATES;
+		if (SPLITTING_LEVELS != null)
+			return true;
+		return EXECUTION_MODE == ExecutionMode.COMPACT || EXECUTION_MODE == ExecutionMode.MEAN_FIELD
+				|| EXECUTION_MODE == ExecutionMode.PARTITIONED;
+	}
+	
+	/** Decides whether a run's output depends only on its settings and seed, so that it
+	 * may be cached: it needs a fixed SEED, no EVENT_LOG, and a synchronous engine. With
+	 * push delivery, the order agents arrive in depends on timing, which only matters once
+	 * agents differ by age, so WORK_STEALING runs with an AGENT_TTL must pull their agents
+	 */
+	private static boolean isReproducible()
+	{
+		if (SEED == -1 || EVENT_LOG != null)
+			return false;
+		if (EXECUTION_MODE == ExecutionMode.WORK_STEALING)
+			return PULL_DELIVERY || AGENT_TTL <= 0;
+		return EXECUTION_MODE == ExecutionMode.COMPACT || EXECUTION_MODE == ExecutionMode.PARTITIONED;
+	}
+	
+	/** Makes the result cache's key of a run. Every setting that changes a run's output
+	 * must be in it, or runs with different settings would be served each other's output;
+	 * those that only change how the output is computed (EXECUTION_MODE, PULL_DELIVERY,
+	 * PIPELINED_ROUNDS, OFF_HEAP, PARTITIONS) are left out, since isReproducible() only
+	 * lets through runs whose output they don't change. A CONTACT_STREAM is hashed with
+	 * the input file, so an edited stream doesn't match either
+	 * @param file the input file
+	 * @param seed the seed of the run
+	 */
+	private static String resultCacheKey(File file, long seed) throws IOException
+	{
+		File[] inputs = (CONTACT_STREAM == null) ? new File[] {file}
+				: new File[] {file, new File(CONTACT_STREAM)};
+		return ResultCache.key(inputs, RESULT_CACHE_VERSION, Node.RECOVERY_THRESHOLD,
+				Node.SANITATION_THRESHOLD, DEFAULT_AGENT_STAY_PROBABILITY, INFECT_X_NODES, ENV_X_NODES,
+				INFECTED_PLACEMENT, ENVIRONMENT_PLACEMENT, AGENT_TTL, CONTACT_STREAM != null,
+				SECONDS_PER_ROUND, seed);
+	}
+	
+	/** Decides whether a run of an input file is better off on a single thread: if the
+	 * graph has fewer than SEQUENTIAL_BELOW nodes, the run is done by a sequential
+	 * CompactEngine, which gives the same output as RoundEngine and CompactEngine for the
+	 * same seed in far less time than any threads would take to coordinate. Only
+	 * WORK_STEALING and COMPACT runs are rerouted; the other modes are chosen for how
+	 * they run, not just for what they give. Runs that need Node objects (AGENT_TTL,
+	 * CONTACT_STREAM) are left alone too, as are runs with an EVENT_LOG: a CompactEngine
+	 * keeps no agents, so logs the node an infecting agent came from rather than where it
+	 * was made, as Nodes do
+	 * @param file the input file, whose first line is "N = <number of nodes>"
+	 */
+	private static boolean runsSequentially(File file) throws IOException
+	{
+		if (EXECUTION_MODE != ExecutionMode.WORK_STEALING && EXECUTION_MODE != ExecutionMode.COMPACT)
+			return false;
+		if (AGENT_TTL > 0 || CONTACT_STREAM != null || EVENT_LOG != null)
+			return false;
+		try (Scanner scan = new Scanner(file))
+		{
+			scan.next(); //clear "N" and "="
+			scan.next();
+			return scan.nextInt() < SEQUENTIAL_BELOW;
+		}
+	}
+	
+	/** Reads an input file as loadCompactSimulation() does, with the same weights and
+	 * placement for the same seed, for a deterministic MeanFieldEngine run. The engine
+	 * keeps its masses on the heap, so the graph and nodes are too, whatever OFF_HEAP is
+	 * @return an engine ready to run the simulation
+	 */
+	public static MeanFieldEngine loadMeanFieldSimulation(File file, Leader leader, long seed,
+			boolean verbose) throws Exception
+	{
+		Scanner scan = new Scanner(file);
+		ArrayList<Integer> infected = new ArrayList<>();
+		ArrayList<Integer> recovered = new ArrayList<>();
+		ArrayList<Integer> nonhuman = new ArrayList<>();
+		int n = readHeader(scan, infected, recovered, nonhuman);
+		Graph graph = readGraph(scan, n, seed);
+		scan.close();
+		
+		NodeState[] states = placeNodes(file, graph, seed, verbose, infected, recovered, nonhuman);
+		return new MeanFieldEngine(graph, states, leader);
+	}
+	
+	/** Reads an input file as loadCompactSimulation() does, with the same weights and
+	 * placement for the same seed, for a PartitionedEngine. The graph is read onto the heap,
+	 * whatever OFF_HEAP is: each partition's workers copy their part of it into their own
+	 * memory, and it is only read again to log infections
+	 * @param partitions the number of partitions, each with its own worker
+	 * @return an engine ready to run the simulation, its partitions allocated
+	 */
+	public static PartitionedEngine loadPartitionedSimulation(File file, Leader leader, long seed,
+			boolean verbose, int partitions) throws Exception
+	{
+		Scanner scan = new Scanner(file);
+		ArrayList<Integer> infected = new ArrayList<>();
+		ArrayList<Integer> recovered = new ArrayList<>();
+		ArrayList<Integer> nonhuman = new ArrayList<>();
+		int n = readHeader(scan, infected, recovered, nonhuman);
+		Graph graph = readGraph(scan, n, seed);
+		scan.close();
+		
+		NodeState[] states = placeNodes(file, graph, seed, verbose, infected, recovered, nonhuman);
+		return new PartitionedEngine(graph, states, leader, seed, partitions);
+	}
+	
+	/** Reads the header of an input file: its number of nodes, and the nodes it lists
+	 * as infected, recovered and nonhuman (if any)
+	 * @param scan the input file, positioned at its start
+	 * @param infected, recovered, nonhuman empty lists to add the listed nodes' names to
+	 * @return the number of nodes
+	 */
+	private static int readHeader(Scanner scan, ArrayList<Integer> infected,
+			ArrayList<Integer> recovered, ArrayList<Integer> nonhuman)
+	{
+		scan.next(); //clear human tokens 
+		scan.next();
+		int n = scan.nextInt();
+		NUM_NODES = n;
+		
+		//parse to get indexes of those infected
+		scan.next();
+		scan.next();
+		String indexesofinfected = scan.nextLine();
+		//parse to get indexes of those recovered
+		scan.next();
+		scan.next();
+		String indexesofrecovered = scan.nextLine();
+		//parse to get indexes of those nonhuman
+		scan.next();
+		scan.next();
+		String indexesofnonhuman = scan.nextLine();
+		
+		//convert string info to a list of indexes
+		infected.addAll(getNodesIndexes(indexesofinfected));
+		recovered.addAll(getNodesIndexes(indexesofrecovered));
+		nonhuman.addAll(getNodesIndexes(indexesofnonhuman));
+		return n;
+	}
+	
+	/** Chooses infected and environment nodes by INFECTED_PLACEMENT and ENVIRONMENT_PLACEMENT
+	 * if the input file doesn't list any, then sets the state of every node
+	 * @param file the input file, next to which the graph's Centrality is kept
+	 * @param graph the graph read from the input file
+	 * @param seed the seed of all of the run's random choices
+	 * @param verbose if true, prints the chosen indexes and states
+	 * @param infected, recovered, nonhuman the nodes the input file listed (see readHeader())
+	 * @return the state of each node (named 1 => n) at the start of the simulation
+	 */
+	private static NodeState[] placeNodes(File file, Topology graph, long seed, boolean verbose,
+			ArrayList<Integer> infected, ArrayList<Integer> recovered, ArrayList<Integer> nonhuman)
+			throws Exception
+	{
+		Random random = new Random(seed); //for choosing infected and environment nodes
+		int n = graph.getNumNodes();
+		//otherwise choosing them would never finish
+		if (INFECT_X_NODES + ENV_X_NODES > n)
+			throw new Exception(INFECT_X_NODES + " infected and " + ENV_X_NODES
+					+ " environment nodes don't fit in " + n);
+		Centrality centrality = null;
+		if ((infected.isEmpty() && INFECTED_PLACEMENT != PlacementStrategy.RANDOM)
+				|| (nonhuman.isEmpty() && ENVIRONMENT_PLACEMENT != PlacementStrategy.RANDOM))
+			centrality = Centrality.load(file, graph);
+		
+		//if no infected were chosen, choose some
+		if (infected.isEmpty())
+			infected.addAll(chooseNodes(INFECTED_PLACEMENT, INFECT_X_NODES, n, random, centrality,
+					new ArrayList<Integer>(), true));
+		
+		//if no env were chosen, choose some from those that aren't infected
+		if (nonhuman.isEmpty())
+			nonhuman.addAll(chooseNodes(ENVIRONMENT_PLACEMENT, ENV_X_NODES, n, random, centrality,
+					infected, true));
+		
+		//check to make sure we set the sizes right
+		if (infected.size() != INFECT_X_NODES || nonhuman.size() != ENV_X_NODES)
+		{
+			if (infected.size() != INFECT_X_NODES)
+				throw new Exception("incorrect number of infected");
+			//else
+			throw new Exception("incorrect number of environment");
+		}
+		
+		//determine that the indexes have been read correctly
+		if (verbose)
+		{
+			System.out.println("N = " + n + ", Infected indexes: ");
+			for (int i = 0; i < infected.size(); i++)
+				System.out.print(infected.get(i) + ", ");
+			System.out.println();
+			System.out.println("recovered indexes: ");
+			for (int i = 0; i < recovered.size(); i++)
+				System.out.print(recovered.get(i) + ", ");
+			System.out.println();
+			System.out.println("nonhuman indexes: ");
+			for (int i = 0; i < nonhuman.size(); i++)
+				System.out.print(nonhuman.get(i) + ", ");
+			System.out.println();
+		}
+		
+		NodeState[] states = chooseStates(n, infected, recovered, nonhuman);
+		
+		//verify that node names and states were set correctly
+		if (verbose)
+			System.out.println("Nodes and states: ");
+		for (int i = 0; verbose && i < states.length; i++)
+		{
+			if (states[i] == NodeState.INFECTED)
+				System.out.println("Name: " + (i + 1) + " , State == INFECTED");
+			else if (states[i] == NodeState.NONHUMAN)
+				System.out.println("Name: " + (i + 1) + " , State == ENVIRONMENT");
+		}
+		return states;
+	}
+	
+	/** Chooses nodes by a placement strategy
+	 * @param strategy how to choose them
+	 * @param count how many to choose
+	 * @param n the number of nodes
+	 * @param random where RANDOM draws from
+	 * @param centrality the measures the other strategies rank nodes by (null if RANDOM)
+	 * @param excluded the indexes of nodes that may not be chosen
+	 * @param legacyDraw if true, RANDOM draws from 0 => n-1 as Runner always has, so that
+	 * 		seeded runs keep their output; 0 names no node, so drawing it places one node
+	 * 		fewer. If false, RANDOM draws from the names 1 => n
+	 * @return the indexes of the chosen nodes, sorted
+	 */
+	static ArrayList<Integer> chooseNodes(PlacementStrategy strategy, int count, int n,
+			Random random, Centrality centrality, ArrayList<Integer> excluded, boolean legacyDraw)
+	{
+		boolean[] taken = new boolean[n + 1];
+		for (int i = 0; i < excluded.size(); i++)
+			taken[excluded.get(i)] = true;
+		if (strategy != PlacementStrategy.RANDOM)
+		{
+			//nodes are named 1 => n, but numbered 0 => n-1 in the graph
+			return centrality.choose(strategy, count, Arrays.copyOfRange(taken, 1, n + 1));
+		}
+		
+		//draw until count different nodes have been drawn (the same draws as always, but
+		//checked against taken rather than by searching the lists)
+		ArrayList<Integer> chosen = new ArrayList<>(count);
+		while (chosen.size() < count)
+		{
+			int index = legacyDraw ? random.nextInt(n) : 1 + random.nextInt(n);
+			if (!taken[index])
+			{
+				taken[index] = true;
+				chosen.add(index);
+			}
+		}
+		Collections.sort(chosen);
+		return chosen;
+	}
+	
+	/** Reads the adjacency list that follows the header of an input file, and weights it
+	 * @param scan the input file, positioned after its header
+	 * @return the graph, with its edges weighted
+	 */
+	private static Graph readGraph(Scanner scan, int n, long seed) throws DataFormatException
+	{
+		long weightSeed = SplitMix.stream(seed, -1); //nodes weight edges from a stream of this
+		Graph graph = Graph.readAdjacency(scan, n);
+		graph.weightEdges(DEFAULT_AGENT_STAY_PROBABILITY, weightSeed);
+		return graph;
+	}
+	
+	/** Runs many independent simulations of the same input file in this process, as
+	 * many at a time as there are cores. Each run is given to listener as it goes;
+	 * the runs' outputs are not otherwise kept.
+	 * If PRECISION_TARGETS are set, count is only the most runs to make: once the
+	 * runs counted so far pin the outcomes down well enough, no more are started, those
+	 * still running are cancelled (and not given to listener), and the outcomes are
+	 * written to output/outcomes.csv. Runs are counted in the order they were started
+	 * (see OutcomeMonitor), so those cancelled all started after the last run counted
+	 * @param file the input file
+	 * @param count the number of runs
+	 * @param listener is given the rounds of every run (so must be thread safe)
+	 */
+	public static void runReplicates(final File file, int count, final RoundListener listener)
+			throws Exception
+	{
+		final Set<Leader> running = Collections.newSetFromMap(new ConcurrentHashMap<Leader, Boolean>());
+		final OutcomeMonitor monitor = (PRECISION_TARGETS == null) ? null
+				: new OutcomeMonitor(PRECISION_TARGETS, MIN_REPLICATES, listener, new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						//the answer is good enough, so the runs still going aren't needed
+						for (Leader leader : running)
+							leader.cancel();
+					}
+				});
+		
+		if (BATCH_REPLICATES)
+			runBatches(file, count, listener, monitor, running);
+		else
+		{
+			final boolean sequential = runsSequentially(file);
+			ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+			for (int i = 0; i < count; i++)
+			{
+				pool.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						if (monitor != null && monitor.isPrecise())
+							return;
+						Leader leader = new Leader(null);
+						RoundListener replicate = (monitor == null) ? listener : monitor.newReplicate();
+						try
+						{
+							leader.setVerbose(false);
+							leader.addRoundListener(replicate);
+							if (AGENT_TTL > 0)
+								leader.setAgentWheel(new AgentWheel(AGENT_TTL));
+							running.add(leader);
+							if (monitor != null && monitor.isPrecise())
+								leader.cancel();
+							long seed = new Random().nextLong();
+							if (sequential)
+								loadCompactSimulation(file, leader, seed, false, 1).run();
+							else
+							{
+								Node[] nodes = loadSimulation(file, leader, seed, false);
+								new RoundEngine(nodes, leader, 1, PULL_DELIVERY).run();
+							}
+						}
+						catch (Exception e)
+						{
+							e.printStackTrace();
+						}
+						finally
+						{
+							running.remove(leader);
+							//let the replicates made after a failed or cancelled one be counted
+							if (monitor != null && !leader.hasCompleted())
+								monitor.abandon(replicate);
+						}
+					}
+				});
+			}
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		}
+		
+		if (monitor != null)
+		{
+			System.out.println("Ran " + monitor.getNumReplicates() + " replicates"
+					+ (monitor.isPrecise() ? ", meeting the precision targets" : ", short of the precision targets"));
+			new File("output").mkdirs();
+			monitor.writeOutcomes(new File("output/outcomes.csv"));
+		}
+	}
+	
+	/** Runs many simulations of the same input file as runReplicates() does, but in batches of
+	 * up to BatchEngine.MAX_LANES in lock-step. The replicates of a batch share only the
+	 * topology, so are as independent as those of runReplicates()
+	 */
+	private static void runBatches(File file, int count, RoundListener listener, OutcomeMonitor monitor,
+			Set<Leader> running) throws Exception
+	{
+		Random random = new Random();
+		for (int done = 0; done < count; done += BatchEngine.MAX_LANES)
+		{
+			if (monitor != null && monitor.isPrecise())
+				break;
+			int lanes = Math.min(BatchEngine.MAX_LANES, count - done);
+			Leader[] leaders = new Leader[lanes];
+			RoundListener[] replicates = new RoundListener[lanes];
+			long[] seeds = new long[lanes];
+			for (int l = 0; l < lanes; l++)
+			{
+				leaders[l] = new Leader(null);
+				leaders[l].setVerbose(false);
+				replicates[l] = (monitor == null) ? listener : monitor.newReplicate();
+				leaders[l].addRoundListener(replicates[l]);
+				seeds[l] = random.nextLong();
+				running.add(leaders[l]);
+			}
+			try
+			{
+				loadBatchSimulation(file, leaders, seeds, false).run();
+			}
+			finally
+			{
+				running.removeAll(Arrays.asList(leaders));
+				for (int l = 0; l < lanes && monitor != null; l++)
+				{
+					if (!leaders[l].hasCompleted())
+						monitor.abandon(replicates[l]);
+				}
+			}
+		}
+	}
+	
+	/** Reads an input file once for a batch of replicates. Replicate l is placed and
+	 * weighted as loadCompactSimulation() would place and weight it for seeds[l]; only the
+	 * topology is shared
+	 * @param file the input file
+	 * @param leaders the leader of each replicate
+	 * @param seeds the seed of each replicate
+	 * @param verbose if true, prints the chosen indexes and states
+	 * @return an engine ready to run the batch
+	 */
+	public static BatchEngine loadBatchSimulation(File file, Leader[] leaders, long[] seeds,
+			boolean verbose) throws Exception
+	{
+		Scanner scan = new Scanner(file);
+		ArrayList<Integer> infected = new ArrayList<>();
+		ArrayList<Integer> recovered = new ArrayList<>();
+		ArrayList<Integer> nonhuman = new ArrayList<>();
+		int n = readHeader(scan, infected, recovered, nonhuman);
+		Graph graph = Graph.readAdjacency(scan, n); //the engine weights it for each replicate
+		scan.close();
+		
+		NodeState[][] states = new NodeState[seeds.length][];
+		for (int l = 0; l < seeds.length; l++)
+			states[l] = placeNodes(file, graph, seeds[l], verbose, new ArrayList<>(infected),
+					new ArrayList<>(recovered), new ArrayList<>(nonhuman));
+		return new BatchEngine(graph, states, leaders, seeds, DEFAULT_AGENT_STAY_PROBABILITY);
+	}
+	
+	/** Starts the simulation according to EXECUTION_MODE
+	 * PRECONDITION: the nodes' edges and the leader's number of nodes have been set
+	 * @param nodes the nodes of the simulation
+	 * @param leader the leader of the nodes
+	 */
+	public static void launch(Node[] nodes, Leader leader)
+	{
+		switch (EXECUTION_MODE)
+		{
+			case THREADS:
+				leader.start();
+				for (int i = 0; i < nodes.length; i++)
+					nodes[i].start();
+				break;
+			case VIRTUAL_THREADS:
+				leader.start();
+				for (int i = 0; i < nodes.length; i++)
+					startVirtual(nodes[i]);
+				break;
+			case WORK_STEALING:
+				RoundEngine engine = new RoundEngine(nodes, leader, PULL_DELIVERY);
+				engine.setPipelined(PIPELINED_ROUNDS);
+				if (CONTACT_STREAM == null)
+				{
+					engine.run();
+					break;
+				}
+				try (ContactStream contacts = new ContactStream(new File(CONTACT_STREAM), SECONDS_PER_ROUND))
+				{
+					engine.setContactStream(contacts, DEFAULT_AGENT_STAY_PROBABILITY);
+					engine.run();
+				}
+				catch (Exception e)
+				{
+					System.out.println("Exception thrown when reading contact stream");
+					e.printStackTrace();
+				}
+				break;
+		}
+	}
+	
+	/** Runs task on a new virtual thread, so that a node's loop parks cheaply while
+	 * waiting on the leader. Virtual threads are looked up reflectively since the
+	 * project targets Java 8; on older JVMs a platform thread is used instead. The
+	 * lookup is only tried once, and the fallback is announced once.
+	 * @param task the task to run, e.g. a Node
+	 */
+	private static void startVirtual(Runnable task)
+	{
+		if (!virtualProbed)
+		{
+			virtualProbed = true;
+			try
+			{
+				virtualBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+				startVirtual = Class.forName("java.lang.Thread$Builder")
+						.getMethod("start", Runnable.class);
+			}
+			catch (ReflectiveOperationException e)
+			{
+				virtualBuilder = null;
+				System.out.println("This JVM has no virtual threads; VIRTUAL_THREADS is falling back "
+						+ "to platform threads");
+			}
+		}
+		if (virtualBuilder != null)
+		{
+			try
+			{
+				startVirtual.invoke(virtualBuilder, task);
+				return;
+			}
+			catch (ReflectiveOperationException e)
+			{
+				System.out.println("Exception thrown when starting a virtual thread");
+				e.printStackTrace();
+			}
+		}
+		new Thread(task).start();
+	}
+	
 	/** Reads a line (param line) and determines which indexes the line
 	 * is referring to, and puts them in sorted order into an ArrayList
 	 * which is then returned
@@ -288,7 +933,20 @@ public class Runner {
 	public static Node[] setNodeStates(int n, Leader leader, ArrayList<Integer> infected, 
 			ArrayList<Integer> recovered, ArrayList<Integer> nonhuman)
 	{
+		NodeState[] states = chooseStates(n, infected, recovered, nonhuman);
 		Node[] nodes = new Node[n];
+		for (int i = 0; i < n; i++)
+			nodes[i] = new Node(i + 1, states[i], leader);
+		return nodes;
+	}
+	
+	/** @return states[], where states[i] is the state of node i + 1 given the sorted
+	 * 		indexes of the infected, recovered and nonhuman nodes
+	 */
+	static NodeState[] chooseStates(int n, ArrayList<Integer> infected,
+			ArrayList<Integer> recovered, ArrayList<Integer> nonhuman)
+	{
+		NodeState[] states = new NodeState[n];
 		//set up variables to point to which node needs to be infected, recovered, etc
 		int infectedInd = -1;
 		if (infected.size() > 0)
@@ -332,9 +990,9 @@ public class Runner {
 			else
 				state = NodeState.SUSCEPTIBLE; //sus by default
 			
-			nodes[i] = new Node(i + 1, state, leader);
+			states[i] = state;
 		}
-		return nodes;
+		return states;
 	}
 
 }
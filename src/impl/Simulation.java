@@ -0,0 +1,240 @@
+/**Simulation.java lets other programs run simulations in their own process, from a graph
+ * they already have in memory, without going through Runner (its input file, console
+ * and output CSV). A simulation is made from a Graph and the state of each node (or
+ * placeRandomly() for Runner's random placement), configured with its setters, then
+ * stepped a round at a time or run to the end. After each round every callback is
+ * called, and can read the round's tally and the state, agents and removed agents of
+ * every node through read-only views of the simulation's own arrays: nothing is copied,
+ * so the views are only meaningful during the callback or between steps.
+ * 
+ * The rounds are CompactEngine's, and the graph is weighted as Runner weights it, so a
+ * simulation of an input file's graph, with the same seed and placement, has the same
+ * rounds as Runner's run of it. By default the simulation runs on the calling thread.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package impl;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+import util.Graph;
+import util.NodeState;
+import util.NodeTable;
+import util.PlacementStrategy;
+import util.RoundTally;
+import util.SplitMix;
+
+public class Simulation
+{
+	private Graph graph;
+	private NodeTable table;
+	private long seed;
+	private double stayProbability = Runner.DEFAULT_AGENT_STAY_PROBABILITY;
+	private int numRounds = -1;
+	private int parallelism = 1;
+	private ArrayList<RoundCallback> callbacks = new ArrayList<>();
+	private CompactEngine engine; //made by the first step
+	private RoundTally tally; //of the last round
+	private boolean finished;
+	private ByteBuffer states;
+	private IntBuffer agents;
+	private IntBuffer thrownAway;
+	
+	/**Makes a simulation of the given graph
+	 * @param graph the graph, with nodes numbered 0 => n-1. Its edges are weighted by
+	 * 		the simulation, so it shouldn't be shared with another running simulation
+	 * @param states states[i] is the state of node i at the start
+	 * @param seed the seed of the edges' weights and of every agent's route
+	 */
+	public Simulation(Graph graph, NodeState[] states, long seed)
+	{
+		if (states.length != graph.getNumNodes())
+			throw new IllegalArgumentException("Expected the states of " + graph.getNumNodes()
+					+ " nodes, not " + states.length);
+		this.graph = graph;
+		this.seed = seed;
+		table = new NodeTable(states, graph.getNumEdges());
+		this.states = table.getStateView();
+		agents = table.getAgentView();
+		thrownAway = table.getThrownAwayView();
+	}
+	
+	/** Places infected and environment nodes at random. Unlike Runner, which keeps its
+	 * old draws from 0 => n-1 (where drawing 0 places one node fewer), this always places
+	 * exactly the given number of each
+	 * @param n the number of nodes
+	 * @param infected how many to infect
+	 * @param environment how many environment nodes to make, from those not infected
+	 * @param seed the seed of the run
+	 * @return the state of each node
+	 */
+	public static NodeState[] placeRandomly(int n, int infected, int environment, long seed)
+	{
+		if (infected + environment > n)
+			throw new IllegalArgumentException(infected + " infected and " + environment
+					+ " environment nodes don't fit in " + n);
+		Random random = new Random(seed);
+		ArrayList<Integer> infectedNodes = Runner.chooseNodes(PlacementStrategy.RANDOM, infected, n,
+				random, null, new ArrayList<Integer>(), false);
+		ArrayList<Integer> environmentNodes = Runner.chooseNodes(PlacementStrategy.RANDOM, environment,
+				n, random, null, infectedNodes, false);
+		return Runner.chooseStates(n, infectedNodes, new ArrayList<Integer>(), environmentNodes);
+	}
+	
+	/** Sets the probability that an agent stays where it is each round. Must be called
+	 * before the first step
+	 */
+	public void setStayProbability(double probability)
+	{
+		checkNotStarted();
+		stayProbability = probability;
+	}
+	
+	/** Sets the number of rounds to run (rounds 0 => rounds - 1), or -1 (the default) to
+	 * run until the outbreak ends. This is a count, not a last round as Leader.setRoundLimit()
+	 * takes, so a simulation always runs at least one round
+	 */
+	public void setNumRounds(int rounds)
+	{
+		if (rounds < 1 && rounds != -1)
+			throw new IllegalArgumentException("A simulation runs at least one round, not " + rounds);
+		numRounds = rounds;
+	}
+	
+	/** Sets the number of threads to compute each round with, or 1 (the default) to compute
+	 * them on the thread that steps the simulation. Must be called before the first step
+	 */
+	public void setParallelism(int parallelism)
+	{
+		checkNotStarted();
+		this.parallelism = parallelism;
+	}
+	
+	/** Has callback called after every round **/
+	public void addCallback(RoundCallback callback)
+	{
+		callbacks.add(callback);
+	}
+	
+	/** Computes the next round, then calls the callbacks
+	 * @return true if there are more rounds to run
+	 * @throws IllegalStateException if the simulation already finished
+	 */
+	public boolean step()
+	{
+		if (finished)
+			throw new IllegalStateException("The simulation has finished");
+		if (engine == null)
+		{
+			graph.weightEdges(stayProbability, SplitMix.stream(seed, -1)); //as Runner.readGraph()
+			engine = new CompactEngine(graph, table, null, seed, parallelism);
+		}
+		tally = engine.step();
+		int round = engine.getRound() - 1;
+		if (numRounds != -1)
+			finished = engine.getRound() >= numRounds;
+		else
+			finished = !Leader.outbreakContinues(round, tally.getNumSus(), tally.getNumInf(),
+					tally.getNumAgSus() + tally.getNumAgInf() + tally.getNumAgNonHum()
+					+ tally.getNumAgentsSent());
+		for (int i = 0; i < callbacks.size(); i++)
+			callbacks.get(i).roundCompleted(this);
+		if (finished)
+			close();
+		return !finished;
+	}
+	
+	/** Steps the simulation until it finishes **/
+	public void run()
+	{
+		while (step())
+			;
+	}
+	
+	/** Stops the simulation's threads, if it has any. Only needed if the simulation is
+	 * abandoned before it finishes
+	 */
+	public void close()
+	{
+		finished = true;
+		if (engine != null)
+			engine.shutdown();
+	}
+	
+	/** @return the number of rounds computed so far **/
+	public int getRound()
+	{
+		return (engine == null) ? 0 : engine.getRound();
+	}
+	
+	/** @return true once the last round has been computed **/
+	public boolean isFinished()
+	{
+		return finished;
+	}
+	
+	/** @return the tally of the last round computed, or null before the first **/
+	public RoundTally getTally()
+	{
+		return tally;
+	}
+	
+	public int getNumNodes()
+	{
+		return table.getNumNodes();
+	}
+	
+	/** @return a read-only view of each node's state, as NodeTable packs them (e.g.
+	 * 		NodeTable.INFECTED). Read it with absolute gets: get(i) is node i's state
+	 */
+	public ByteBuffer getStates()
+	{
+		return states;
+	}
+	
+	/** @return a read-only view of the agents in each node **/
+	public IntBuffer getAgents()
+	{
+		return agents;
+	}
+	
+	/** @return a read-only view of the agents each node has removed **/
+	public IntBuffer getThrownAway()
+	{
+		return thrownAway;
+	}
+	
+	private void checkNotStarted()
+	{
+		if (engine != null)
+			throw new IllegalStateException("The simulation has already started");
+	}
+	
+	/** Something told about every round of a simulation **/
+	public interface RoundCallback
+	{
+		/** Called once each round has been computed. The simulation's views must not be
+		 * kept past the call if the simulation is stepped again
+		 */
+		void roundCompleted(Simulation simulation);
+	}
+}
@@ -0,0 +1,204 @@
+/**SplittingEstimator.java estimates the probability of rare outbreaks, such as ones that
+ * last for hundreds of rounds, by multilevel splitting rather than plain Monte Carlo.
+ * The outcome is split into levels of an OutbreakMeasure (e.g. 20, 40, 60 rounds), and
+ * a fixed number of trajectories are run at each level: those of the first level from
+ * the start of the simulation, those of each later level from the states in which the
+ * trajectories of the level before reached it, shared out among them in turn. Each
+ * trajectory is a split of a stepped CompactEngine with a seed of its own, and runs
+ * until it reaches its level or its outbreak ends. The probability of reaching the last
+ * level is the product of the fractions of trajectories that reached each level, so a
+ * tail event of probability 1e-6 takes a few levels of a few hundred trajectories,
+ * most of them short, rather than millions of whole runs.
+ * 
+ * The estimate is of the given simulation, so of its placement of the infected and
+ * environment nodes: every trajectory starts from the same state.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package impl;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import util.OutbreakMeasure;
+import util.RoundTally;
+import util.SplitMix;
+
+public class SplittingEstimator
+{
+	private CompactEngine root;
+	private OutbreakMeasure measure;
+	private int[] levels;
+	private int effort; //the trajectories run at each level
+	private long seed;
+	private long splits; //the trajectories made so far, numbering their seeds
+	private int[] reached; //reached[k] is the number of trajectories that reached level k
+	private long roundsSimulated;
+	
+	/**Makes an estimator of the probability that a simulation reaches the last of the
+	 * given levels
+	 * @param root an engine at the start of the simulation. It is only split, never stepped
+	 * @param measure what the levels count
+	 * @param levels the thresholds of the measure, increasing
+	 * @param effort the number of trajectories to run at each level
+	 * @param seed the seed the trajectories' seeds are drawn from
+	 */
+	public SplittingEstimator(CompactEngine root, OutbreakMeasure measure, int[] levels,
+			int effort, long seed)
+	{
+		if (levels.length == 0 || effort < 1)
+			throw new IllegalArgumentException("Splitting needs at least one level and one trajectory");
+		for (int k = 1; k < levels.length; k++)
+		{
+			if (levels[k] <= levels[k - 1])
+				throw new IllegalArgumentException("Splitting levels must increase: " + levels[k]);
+		}
+		this.root = root;
+		this.measure = measure;
+		this.levels = levels.clone();
+		this.effort = effort;
+		this.seed = seed;
+		reached = new int[levels.length];
+	}
+	
+	/** Runs the trajectories of every level, stopping early if none reach one. Shuts down
+	 * the root engine's pool when done
+	 * @return the estimated probability of reaching the last level
+	 */
+	public double estimate()
+	{
+		try
+		{
+			ArrayList<Checkpoint> starts = new ArrayList<>();
+			starts.add(new Checkpoint(root, true));
+			for (int k = 0; k < levels.length; k++)
+			{
+				ArrayList<Checkpoint> next = new ArrayList<>();
+				for (int i = 0; i < effort; i++)
+				{
+					Checkpoint checkpoint = advance(starts.get(i % starts.size()), levels[k]);
+					if (checkpoint != null)
+						next.add(checkpoint);
+				}
+				reached[k] = next.size();
+				if (next.isEmpty())
+					break;
+				starts = next;
+			}
+		}
+		finally
+		{
+			root.shutdown();
+		}
+		return getProbability();
+	}
+	
+	/** Runs a new trajectory from a checkpoint until it reaches a level or its outbreak ends
+	 * @return the state in which the trajectory reached the level, or null if it didn't
+	 */
+	private Checkpoint advance(Checkpoint start, int level)
+	{
+		if (!start.alive)
+			return null;
+		CompactEngine engine = start.engine.split(SplitMix.stream(seed, -2 - splits++));
+		while (true)
+		{
+			RoundTally tally = engine.step();
+			roundsSimulated++;
+			int totalAgents = tally.getNumAgSus() + tally.getNumAgInf() + tally.getNumAgNonHum()
+					+ tally.getNumAgentsSent();
+			boolean alive = Leader.outbreakContinues(engine.getRound() - 1, tally.getNumSus(),
+					tally.getNumInf(), totalAgents);
+			int score = (measure == OutbreakMeasure.DURATION) ? engine.getRound()
+					: tally.getNumInf() + tally.getNumRec();
+			if (score >= level)
+				return new Checkpoint(engine, alive);
+			if (!alive)
+				return null;
+		}
+	}
+	
+	/** @return the estimated probability of reaching the last level, if estimate() has run **/
+	public double getProbability()
+	{
+		double probability = 1;
+		for (int k = 0; k < levels.length; k++)
+			probability *= (double) reached[k] / effort;
+		return probability;
+	}
+	
+	/** @return the approximate relative standard error of the probability, treating the
+	 * 		levels as independent: sqrt(sum over levels of (1 - p) / (effort * p)),
+	 * 		or infinity if some level wasn't reached
+	 */
+	public double getRelativeError()
+	{
+		double variance = 0;
+		for (int k = 0; k < levels.length; k++)
+		{
+			if (reached[k] == 0)
+				return Double.POSITIVE_INFINITY;
+			double p = (double) reached[k] / effort;
+			variance += (1 - p) / (effort * p);
+		}
+		return Math.sqrt(variance);
+	}
+	
+	/** @return the number of rounds computed by all the trajectories **/
+	public long getRoundsSimulated()
+	{
+		return roundsSimulated;
+	}
+	
+	/** Writes the fraction of trajectories that reached each level, and the probability
+	 * of reaching it, one level per line
+	 */
+	public void writeResults(File file) throws IOException
+	{
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file)))
+		{
+			writer.write("Splitting estimate by " + measure + ", " + effort + " trajectories per level, "
+					+ roundsSimulated + " rounds simulated\n");
+			writer.write("Level, Threshold, Reached, Conditional probability, Probability\n");
+			double probability = 1;
+			for (int k = 0; k < levels.length; k++)
+			{
+				double p = (double) reached[k] / effort;
+				probability *= p;
+				writer.write(k + ", " + levels[k] + ", " + reached[k] + ", " + p + ", " + probability + "\n");
+			}
+		}
+	}
+	
+	/** A state some trajectory reached a level in **/
+	private static class Checkpoint
+	{
+		private CompactEngine engine;
+		private boolean alive; //false if the outbreak ended in the round that reached the level
+		
+		Checkpoint(CompactEngine engine, boolean alive)
+		{
+			this.engine = engine;
+			this.alive = alive;
+		}
+	}
+}
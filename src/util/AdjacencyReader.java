@@ -0,0 +1,99 @@
+/**AdjacencyReader.java reads the adjacency list lines of an input file
+ * ("index : destination destination ...") one at a time, checking that every
+ * node named is in 1 => n. Nodes are given numbered 0 => n-1.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.util.Scanner;
+import java.util.zip.DataFormatException;
+
+class AdjacencyReader
+{
+	private Scanner scan;
+	private int n;
+	private int[] tokens; //the numbers on the current line
+	private long[] values; //the numbers on the current line, as GraphPreprocessor parses them
+	private int numTokens;
+	private int lineNumber;
+	
+	/** @param scan the input file, positioned after its header **/
+	AdjacencyReader(Scanner scan, int n)
+	{
+		this.scan = scan;
+		this.n = n;
+		tokens = new int[64];
+		values = new long[64];
+	}
+	
+	/** Reads the next line that lists a node
+	 * @return false if there are no more lines
+	 */
+	boolean nextLine() throws DataFormatException
+	{
+		numTokens = 0;
+		while (numTokens == 0 && scan.hasNextLine())
+		{
+			String line = scan.nextLine();
+			lineNumber++;
+			int count = GraphPreprocessor.parseLine(line, values);
+			if (count > values.length)
+			{
+				values = new long[count];
+				tokens = new int[count];
+				GraphPreprocessor.parseLine(line, values);
+			}
+			for (int i = 0; i < count; i++)
+			{
+				long value = values[i];
+				if (value == GraphPreprocessor.NOT_WHOLE)
+					throw new DataFormatException("Adjacency line " + lineNumber
+							+ " has a number that isn't a whole number");
+				if (value == GraphPreprocessor.SATURATED)
+					throw new DataFormatException("Adjacency line " + lineNumber
+							+ " has a number too big to be a node");
+				if (value < 1 || value > n)
+					throw new DataFormatException("Node " + value + " on adjacency line "
+							+ lineNumber + " is not in 1 => " + n);
+				tokens[i] = (int) value - 1; //since nodes are numbered 1 => n in the input files
+			}
+			numTokens = count;
+		}
+		return numTokens > 0;
+	}
+	
+	/** @return the node the current line lists the edges of **/
+	int getSource()
+	{
+		return tokens[0];
+	}
+	
+	/** @return the number of edges on the current line **/
+	int getDegree()
+	{
+		return numTokens - 1;
+	}
+	
+	/** @return the destination of the ith edge on the current line **/
+	int getDestination(int i)
+	{
+		return tokens[i + 1];
+	}
+}
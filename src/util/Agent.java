@@ -22,19 +22,29 @@
  */
 package util;
 
+import impl.Node;
+
 public class Agent{
 	
 	private int nodeOfOrigin;
 	private static int UID = -1;
-	private int lifespan;
+	private int born; //the round the agent was made in
+	private boolean expired; //set by AgentWheel once the agent's time to live runs out
+	private Node holder; //the node that has (or is about to receive) this agent
 	private double probability; //generated and associated when performing message passing
 							//value is mutable; changes ea round
 	
 	public Agent(int nodeOfOrigin)
+	{
+		this(nodeOfOrigin, 0);
+	}
+	
+	/** Makes an agent in the given round, so that its age can be told from the round **/
+	public Agent(int nodeOfOrigin, int born)
 	{
 		this.nodeOfOrigin = nodeOfOrigin;
 		UID++;
-		lifespan = 0;
+		this.born = born;
 	}
 	
 	public void setProbability(double probability)
@@ -42,15 +52,36 @@ public class Agent{
 		this.probability = probability;
 	}
 	
-	/** should be called each round **/
-	public void age()
+	/** @return the number of rounds since this agent was made **/
+	public int getAge(int round)
+	{
+		return round - born; 
+	}
+	
+	public int getBorn()
+	{
+		return born;
+	}
+	
+	/** Marks this agent as decayed; the node holding it removes it **/
+	public void expire()
+	{
+		expired = true;
+	}
+	
+	public boolean isExpired()
+	{
+		return expired;
+	}
+	
+	public void setHolder(Node holder)
 	{
-		lifespan++;
+		this.holder = holder;
 	}
 	
-	public int getAge()
+	public Node getHolder()
 	{
-		return lifespan; 
+		return holder;
 	}
 	
 	public int getUID()
@@ -0,0 +1,98 @@
+/**AgentWheel.java gives agents a time to live: an agent made in round b decays at the
+ * start of round b + ttl, wherever it is. Agents are put in a timing wheel of ttl + 1
+ * buckets by the round they expire in, so each round only the bucket of agents expiring
+ * then is visited, and no agent has to be aged every round. Expired agents are marked,
+ * and only the nodes holding them are told, so only those nodes go through their agents
+ * to drop them. Agents thrown away before they expire must be cancelled, so the wheel
+ * doesn't keep them until their bucket comes round.
+ * Decay isn't a removal: expired agents aren't counted in either "removed" column of
+ * the output, so the total number of agents falls by them with nothing to match.
+ * 
+ * Nodes schedule and cancel agents concurrently; expire() must be called between rounds,
+ * when no node is running.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import impl.Node;
+
+public class AgentWheel
+{
+	private int ttl;
+	private ArrayList<Set<Agent>> buckets; //bucket r % (ttl + 1) expires in round r
+	private int numExpired; //the agents expired by the last call to expire()
+	
+	/** @param ttl the number of rounds an agent lives (at least 1) **/
+	public AgentWheel(int ttl)
+	{
+		if (ttl < 1)
+			throw new IllegalArgumentException("Agents must live for at least a round, not " + ttl);
+		this.ttl = ttl;
+		buckets = new ArrayList<>(ttl + 1);
+		for (int i = 0; i <= ttl; i++)
+			buckets.add(ConcurrentHashMap.<Agent>newKeySet());
+	}
+	
+	public int getTimeToLive()
+	{
+		return ttl;
+	}
+	
+	/** Schedules a newly made agent to expire ttl rounds after it was made **/
+	public void schedule(Agent agent)
+	{
+		buckets.get((agent.getBorn() + ttl) % buckets.size()).add(agent);
+	}
+	
+	/** Takes an agent that was removed from the simulation out of the wheel **/
+	public void cancel(Agent agent)
+	{
+		buckets.get((agent.getBorn() + ttl) % buckets.size()).remove(agent);
+	}
+	
+	/** Marks the agents that expire at the start of round as expired, and tells the
+	 * nodes holding them
+	 * @return the number of agents that expired
+	 */
+	public int expire(int round)
+	{
+		Set<Agent> bucket = buckets.get(round % buckets.size());
+		for (Agent agent : bucket)
+		{
+			agent.expire();
+			Node holder = agent.getHolder();
+			if (holder != null)
+				holder.agentExpired();
+		}
+		numExpired = bucket.size();
+		bucket.clear();
+		return numExpired;
+	}
+	
+	/** @return the number of agents that expired at the start of this round **/
+	public int getNumExpired()
+	{
+		return numExpired;
+	}
+}
@@ -0,0 +1,490 @@
+/**Centrality.java computes measures of how central each node of a graph is, for
+ * placing the initial infected and environment nodes (see PlacementStrategy):
+ * 
+ * degree: the number of out-edges.
+ * k-core: the largest k s.t. the node is in a subgraph where every node has k neighbors,
+ * 		found by repeatedly replacing each node's value with the h-index of its neighbors'
+ * 		values (starting from the degrees) until nothing changes.
+ * PageRank: by power iteration. Each node leaves its rank / degree in the slot of each
+ * 		of its edges, then each node adds up the slots of its in-edges (as CompactEngine
+ * 		moves agents), so no two threads write to the same place.
+ * betweenness: approximated from shortest paths out of a sample of source nodes
+ * 		(Brandes' algorithm, scaled by n / samples). Sources are split among the workers.
+ * 
+ * Neighbors are out-edges, which for the (symmetric) adjacency lists of the input files
+ * are all of a node's contacts. Every measure is computed in parallel, on the common
+ * fork/join pool. Computing them can take a while on large graphs, so they are saved to
+ * a file next to the input file, stamped with a hash of the input, and reused.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.DoubleAdder;
+
+public class Centrality
+{
+	private final static double DAMPING = 0.85; //PageRank's probability of following an edge
+	private final static int MAX_PAGERANK_ITERATIONS = 100;
+	private final static double PAGERANK_TOLERANCE = 1e-10; //stop once ranks change by less (L1)
+	private final static int BETWEENNESS_SAMPLES = 64; //source nodes betweenness is estimated from
+	private final static long BETWEENNESS_SEED = 1; //fixed, so the saved measures don't depend on a run
+	
+	//buffers for counting neighbors' values (for h-indexes), one per worker thread
+	private final static ThreadLocal<int[]> COUNT_BUFFERS = new ThreadLocal<int[]>()
+	{
+		@Override
+		protected int[] initialValue()
+		{
+			return new int[64];
+		}
+	};
+	
+	private int n;
+	private int[] degree;
+	private int[] core;
+	private double[] pageRank;
+	private double[] betweenness;
+	
+	private Centrality(int n)
+	{
+		this.n = n;
+	}
+	
+	/** Computes every measure of a graph
+	 * @param graph the graph, as read from the input file
+	 */
+	public static Centrality compute(Topology graph) throws IOException
+	{
+		Centrality centrality = new Centrality(graph.getNumNodes());
+		centrality.computeDegrees(graph);
+		centrality.computeCores(graph);
+		centrality.computePageRank(graph);
+		centrality.computeBetweenness(graph);
+		return centrality;
+	}
+	
+	/** Loads the measures of the graph in input from the file next to it, computing
+	 * (and saving) them if they haven't been or the input has changed since
+	 * @param input the input file the graph was read from
+	 * @param graph the graph
+	 */
+	public static Centrality load(File input, Topology graph) throws IOException
+	{
+		File saved = new File(input.getPath() + ".centrality");
+		String key = ResultCache.key(input, DAMPING, MAX_PAGERANK_ITERATIONS, PAGERANK_TOLERANCE,
+				BETWEENNESS_SAMPLES, BETWEENNESS_SEED);
+		Centrality centrality = read(saved, key, graph.getNumNodes());
+		if (centrality != null)
+			return centrality;
+		
+		centrality = compute(graph);
+		//write to a temporary file first so no reader ever sees half of it
+		File temp = File.createTempFile(input.getName(), ".tmp", saved.getAbsoluteFile().getParentFile());
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(temp.toPath()))))
+		{
+			out.writeUTF(key);
+			out.writeInt(centrality.n);
+			for (int i = 0; i < centrality.n; i++)
+			{
+				out.writeInt(centrality.degree[i]);
+				out.writeInt(centrality.core[i]);
+				out.writeDouble(centrality.pageRank[i]);
+				out.writeDouble(centrality.betweenness[i]);
+			}
+		}
+		Files.move(temp.toPath(), saved.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		return centrality;
+	}
+	
+	/** @return the measures saved in file, or null if there are none for this key **/
+	private static Centrality read(File file, String key, int n) throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(file.toPath()))))
+		{
+			if (!in.readUTF().equals(key) || in.readInt() != n)
+				return null;
+			Centrality centrality = new Centrality(n);
+			centrality.degree = new int[n];
+			centrality.core = new int[n];
+			centrality.pageRank = new double[n];
+			centrality.betweenness = new double[n];
+			for (int i = 0; i < n; i++)
+			{
+				centrality.degree[i] = in.readInt();
+				centrality.core[i] = in.readInt();
+				centrality.pageRank[i] = in.readDouble();
+				centrality.betweenness[i] = in.readDouble();
+			}
+			return centrality;
+		}
+		catch (NoSuchFileException e)
+		{
+			return null;
+		}
+	}
+	
+	public int getDegree(int node)
+	{
+		return degree[node];
+	}
+	
+	public int getCore(int node)
+	{
+		return core[node];
+	}
+	
+	public double getPageRank(int node)
+	{
+		return pageRank[node];
+	}
+	
+	public double getBetweenness(int node)
+	{
+		return betweenness[node];
+	}
+	
+	/** Chooses the most central nodes by a measure, breaking ties by the lowest number
+	 * @param strategy the measure to rank the nodes by (not RANDOM)
+	 * @param count how many nodes to choose
+	 * @param excluded nodes that must not be chosen (excluded[i] for node i), or null
+	 * @return the names (1 => n) of the chosen nodes, in ascending order
+	 */
+	public ArrayList<Integer> choose(PlacementStrategy strategy, int count, boolean[] excluded)
+	{
+		//a min-heap of the best count nodes so far, the worst of them at the root
+		int[] heap = new int[count];
+		int size = 0;
+		for (int i = 0; i < n; i++)
+		{
+			if (excluded != null && excluded[i])
+				continue;
+			if (size < count)
+			{
+				heap[size] = i;
+				siftUp(strategy, heap, size++);
+			}
+			else if (count > 0 && isBetter(strategy, i, heap[0]))
+			{
+				heap[0] = i;
+				siftDown(strategy, heap, size);
+			}
+		}
+		
+		ArrayList<Integer> chosen = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			chosen.add(heap[i] + 1); //since nodes are named 1 => n
+		Collections.sort(chosen);
+		return chosen;
+	}
+	
+	/** @return true if node one ranks above node two **/
+	private boolean isBetter(PlacementStrategy strategy, int one, int two)
+	{
+		int compared;
+		switch (strategy)
+		{
+			case DEGREE:
+				compared = Integer.compare(degree[one], degree[two]);
+				break;
+			case CORE:
+				compared = Integer.compare(core[one], core[two]);
+				break;
+			case PAGERANK:
+				compared = Double.compare(pageRank[one], pageRank[two]);
+				break;
+			case BETWEENNESS:
+				compared = Double.compare(betweenness[one], betweenness[two]);
+				break;
+			default:
+				throw new IllegalArgumentException(strategy + " doesn't rank nodes");
+		}
+		return compared > 0 || (compared == 0 && one < two);
+	}
+	
+	private void siftUp(PlacementStrategy strategy, int[] heap, int i)
+	{
+		while (i > 0 && isBetter(strategy, heap[(i - 1) / 2], heap[i]))
+		{
+			swap(heap, i, (i - 1) / 2);
+			i = (i - 1) / 2;
+		}
+	}
+	
+	private void siftDown(PlacementStrategy strategy, int[] heap, int size)
+	{
+		int i = 0;
+		while (2 * i + 1 < size)
+		{
+			int worst = 2 * i + 1;
+			if (worst + 1 < size && isBetter(strategy, heap[worst], heap[worst + 1]))
+				worst++;
+			if (!isBetter(strategy, heap[i], heap[worst]))
+				return;
+			swap(heap, i, worst);
+			i = worst;
+		}
+	}
+	
+	private static void swap(int[] heap, int i, int j)
+	{
+		int temp = heap[i];
+		heap[i] = heap[j];
+		heap[j] = temp;
+	}
+	
+	private void computeDegrees(final Topology graph)
+	{
+		degree = new int[n];
+		graph.forEachNode(new Topology.NodeAction()
+		{
+			@Override
+			public void apply(int u)
+			{
+				degree[u] = (int) (graph.edgeEnd(u) - graph.edgeStart(u));
+			}
+		});
+	}
+	
+	/** PRECONDITION: the degrees have been computed **/
+	private void computeCores(final Topology graph)
+	{
+		final int[][] values = { degree.clone(), new int[n] };
+		final AtomicBoolean changed = new AtomicBoolean(true);
+		int current = 0;
+		while (changed.get())
+		{
+			changed.set(false);
+			final int[] from = values[current];
+			final int[] to = values[1 - current];
+			graph.forEachNode(new Topology.NodeAction()
+			{
+				@Override
+				public void apply(int u)
+				{
+					to[u] = Math.min(from[u], hIndex(graph, from, u));
+					if (to[u] != from[u])
+						changed.set(true);
+				}
+			});
+			current = 1 - current;
+		}
+		core = values[current];
+	}
+	
+	/** @return the largest h s.t. at least h of u's neighbors have values >= h **/
+	private static int hIndex(Topology graph, int[] values, int u)
+	{
+		long start = graph.edgeStart(u);
+		int degree = (int) (graph.edgeEnd(u) - start);
+		int[] counts = COUNT_BUFFERS.get();
+		if (counts.length < degree + 1)
+		{
+			counts = new int[Math.max(degree + 1, 2 * counts.length)];
+			COUNT_BUFFERS.set(counts);
+		}
+		Arrays.fill(counts, 0, degree + 1, 0);
+		for (long e = start; e < start + degree; e++)
+			counts[Math.min(values[graph.target(e)], degree)]++;
+		int atLeast = 0;
+		for (int h = degree; h > 0; h--)
+		{
+			atLeast += counts[h];
+			if (atLeast >= h)
+				return h;
+		}
+		return 0;
+	}
+	
+	/** PRECONDITION: the degrees have been computed **/
+	private void computePageRank(final Topology graph) throws IOException
+	{
+		graph.indexInEdges();
+		final ChunkedBuffer slots = new ChunkedBuffer(8 * graph.getNumEdges(), null);
+		final double[][] ranks = { new double[n], new double[n] };
+		Arrays.fill(ranks[0], 1.0 / n);
+		int current = 0;
+		for (int iteration = 0; iteration < MAX_PAGERANK_ITERATIONS; iteration++)
+		{
+			final double[] from = ranks[current];
+			final double[] to = ranks[1 - current];
+			
+			//nodes with no edges spread their rank over every node
+			final DoubleAdder dangling = new DoubleAdder();
+			graph.forEachNode(new Topology.NodeAction()
+			{
+				@Override
+				public void apply(int u)
+				{
+					if (degree[u] == 0)
+					{
+						dangling.add(from[u]);
+						return;
+					}
+					double share = from[u] / degree[u];
+					for (long e = graph.edgeStart(u); e < graph.edgeEnd(u); e++)
+						slots.putDouble(8 * e, share);
+				}
+			});
+			
+			final double base = (1 - DAMPING) / n + DAMPING * dangling.sum() / n;
+			final DoubleAdder change = new DoubleAdder();
+			graph.forEachNode(new Topology.NodeAction()
+			{
+				@Override
+				public void apply(int v)
+				{
+					double sum = 0;
+					for (long k = graph.inEdgeStart(v); k < graph.inEdgeEnd(v); k++)
+						sum += slots.getDouble(8 * graph.inEdge(k));
+					to[v] = base + DAMPING * sum;
+					change.add(Math.abs(to[v] - from[v]));
+				}
+			});
+			current = 1 - current;
+			if (change.sum() < PAGERANK_TOLERANCE)
+				break;
+		}
+		pageRank = ranks[current];
+	}
+	
+	private void computeBetweenness(Topology graph)
+	{
+		int samples = Math.min(BETWEENNESS_SAMPLES, n);
+		int[] sources = new int[samples];
+		for (int i = 0; i < samples; i++)
+			sources[i] = (int) (SplitMix.uniform(BETWEENNESS_SEED, i) * n);
+		
+		//give each worker an even share of the sources, and its own arrays
+		int workers = Math.max(1, Math.min(samples, ForkJoinPool.getCommonPoolParallelism()));
+		ArrayList<BetweennessTask> tasks = new ArrayList<>(workers);
+		for (int w = 0; w < workers; w++)
+		{
+			BetweennessTask task = new BetweennessTask(graph, sources, w * samples / workers,
+					(w + 1) * samples / workers);
+			ForkJoinPool.commonPool().execute(task);
+			tasks.add(task);
+		}
+		betweenness = new double[n];
+		for (BetweennessTask task : tasks)
+		{
+			double[] partial = task.join();
+			for (int i = 0; i < n; i++)
+				betweenness[i] += partial[i];
+		}
+		double scale = samples == 0 ? 0 : (double) n / samples;
+		for (int i = 0; i < n; i++)
+			betweenness[i] *= scale;
+	}
+	
+	/** Adds up the dependencies of every node on the shortest paths out of some sources **/
+	private static class BetweennessTask extends RecursiveTask<double[]>
+	{
+		private static final long serialVersionUID = 1L;
+		private Topology graph;
+		private int[] sources;
+		private int low;
+		private int high;
+		
+		BetweennessTask(Topology graph, int[] sources, int low, int high)
+		{
+			this.graph = graph;
+			this.sources = sources;
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		protected double[] compute()
+		{
+			int n = graph.getNumNodes();
+			double[] total = new double[n];
+			int[] distance = new int[n];
+			double[] paths = new double[n]; //the number of shortest paths from the source
+			double[] dependency = new double[n];
+			int[] order = new int[n]; //nodes in the order they were reached (the BFS queue)
+			Arrays.fill(distance, -1);
+			for (int s = low; s < high; s++)
+			{
+				int source = sources[s];
+				int reached = 0;
+				order[reached++] = source;
+				distance[source] = 0;
+				paths[source] = 1;
+				for (int head = 0; head < reached; head++)
+				{
+					int u = order[head];
+					for (long e = graph.edgeStart(u); e < graph.edgeEnd(u); e++)
+					{
+						int v = graph.target(e);
+						if (distance[v] == -1)
+						{
+							distance[v] = distance[u] + 1;
+							order[reached++] = v;
+						}
+						if (distance[v] == distance[u] + 1)
+							paths[v] += paths[u];
+					}
+				}
+				
+				//accumulate dependencies from the farthest nodes back towards the source
+				for (int i = reached - 1; i >= 0; i--)
+				{
+					int u = order[i];
+					for (long e = graph.edgeStart(u); e < graph.edgeEnd(u); e++)
+					{
+						int v = graph.target(e);
+						if (distance[v] == distance[u] + 1)
+							dependency[u] += paths[u] / paths[v] * (1 + dependency[v]);
+					}
+					if (u != source)
+						total[u] += dependency[u];
+				}
+				
+				//reset only what this source touched
+				for (int i = 0; i < reached; i++)
+				{
+					int u = order[i];
+					distance[u] = -1;
+					paths[u] = 0;
+					dependency[u] = 0;
+				}
+			}
+			return total;
+		}
+	}
+}
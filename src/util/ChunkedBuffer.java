@@ -0,0 +1,161 @@
+/**ChunkedBuffer.java is a long-indexed block of memory outside the Java heap, made of
+ * ByteBuffers of up to 2^30 bytes each, since a single buffer (like an array) can only
+ * be indexed by an int. The chunks are direct buffers, or regions of a file mapped
+ * into memory if the buffer is given a file. Either way the garbage collector never
+ * has to scan or move the contents.
+ * 
+ * Values are read and written at absolute byte offsets, in the platform's byte order.
+ * Each value must be aligned to its own size (ints at multiples of 4, etc.) so that
+ * none of them straddles two chunks. Absolute reads and writes don't move a buffer's
+ * position, so different threads may use different parts of the buffer at once.
+ * 
+ * Direct buffers count against -XX:MaxDirectMemorySize (by default, the maximum heap size).
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public class ChunkedBuffer
+{
+	private final static int CHUNK_SHIFT = 30;
+	private final static long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+	private final static long CHUNK_MASK = CHUNK_SIZE - 1;
+	
+	private ByteBuffer[] chunks;
+	private long capacity;
+	private RandomAccessFile file; //the file the chunks are mapped from, or null if they're direct
+	
+	/**Makes a zeroed buffer
+	 * @param bytes the initial capacity of the buffer
+	 * @param backing the file to map the buffer to (its contents are replaced), or null
+	 * 		to allocate the buffer in direct memory
+	 */
+	public ChunkedBuffer(long bytes, File backing) throws IOException
+	{
+		chunks = new ByteBuffer[0];
+		capacity = 0;
+		if (backing != null)
+		{
+			file = new RandomAccessFile(backing, "rw");
+			file.setLength(0);
+		}
+		ensureCapacity(bytes);
+	}
+	
+	/** @return the number of bytes that can be used **/
+	public long capacity()
+	{
+		return capacity;
+	}
+	
+	/** Grows the buffer (to at least double its size) if it holds fewer than bytes,
+	 * keeping its contents. New space is zeroed
+	 */
+	public void ensureCapacity(long bytes) throws IOException
+	{
+		if (bytes <= capacity)
+			return;
+		long grown = Math.max(bytes, 2 * capacity);
+		grown = (grown + 7) & ~7L; //keep longs and doubles aligned
+		int numChunks = (int) ((grown + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+		ByteBuffer[] old = chunks;
+		chunks = Arrays.copyOf(old, numChunks);
+		if (file != null)
+			file.setLength(grown);
+		//only the last chunk can be partial, so it and any new chunks are (re)allocated
+		for (int c = Math.max(old.length - 1, 0); c < numChunks; c++)
+		{
+			long position = c * CHUNK_SIZE;
+			int size = (int) Math.min(CHUNK_SIZE, grown - position);
+			ByteBuffer chunk;
+			if (file != null) //the file already holds the old contents
+				chunk = file.getChannel().map(FileChannel.MapMode.READ_WRITE, position, size);
+			else
+			{
+				chunk = ByteBuffer.allocateDirect(size);
+				if (c < old.length)
+				{
+					ByteBuffer contents = old[c].duplicate();
+					contents.clear();
+					chunk.put(contents);
+					chunk.clear();
+				}
+			}
+			chunks[c] = chunk.order(ByteOrder.nativeOrder());
+		}
+		capacity = grown;
+	}
+	
+	public byte getByte(long offset)
+	{
+		return chunks[(int) (offset >>> CHUNK_SHIFT)].get((int) (offset & CHUNK_MASK));
+	}
+	
+	public void putByte(long offset, byte value)
+	{
+		chunks[(int) (offset >>> CHUNK_SHIFT)].put((int) (offset & CHUNK_MASK), value);
+	}
+	
+	public int getInt(long offset)
+	{
+		return chunks[(int) (offset >>> CHUNK_SHIFT)].getInt((int) (offset & CHUNK_MASK));
+	}
+	
+	public void putInt(long offset, int value)
+	{
+		chunks[(int) (offset >>> CHUNK_SHIFT)].putInt((int) (offset & CHUNK_MASK), value);
+	}
+	
+	public long getLong(long offset)
+	{
+		return chunks[(int) (offset >>> CHUNK_SHIFT)].getLong((int) (offset & CHUNK_MASK));
+	}
+	
+	public void putLong(long offset, long value)
+	{
+		chunks[(int) (offset >>> CHUNK_SHIFT)].putLong((int) (offset & CHUNK_MASK), value);
+	}
+	
+	public double getDouble(long offset)
+	{
+		return chunks[(int) (offset >>> CHUNK_SHIFT)].getDouble((int) (offset & CHUNK_MASK));
+	}
+	
+	public void putDouble(long offset, double value)
+	{
+		chunks[(int) (offset >>> CHUNK_SHIFT)].putDouble((int) (offset & CHUNK_MASK), value);
+	}
+	
+	/** Closes the backing file, if there is one. Mapped chunks stay readable until
+	 * they are garbage collected, but must not be used after this
+	 */
+	public void close() throws IOException
+	{
+		if (file != null)
+			file.close();
+	}
+}
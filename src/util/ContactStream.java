@@ -0,0 +1,146 @@
+/**ContactStream.java reads a time-varying contact network as a stream of
+ * timestamped edge additions and removals, one per line, in time order:
+ * 
+ * time + source destination		(the directed edge source -> destination appears)
+ * time - source destination		(the directed edge source -> destination disappears)
+ * 
+ * Times are in seconds, and nodes are numbered 1 => n as in the input files.
+ * Lines starting with # are ignored. Time is mapped onto rounds so that round r
+ * covers [start + r * secondsPerRound, start + (r + 1) * secondsPerRound), where
+ * start is the time of the first event. Only one line is held in memory at a time.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+
+public class ContactStream implements Closeable
+{
+	private BufferedReader reader;
+	private double secondsPerRound;
+	private double start;
+	private boolean started; //true once the time of the first event is known
+	private int lineNumber;
+	
+	//the current event
+	private boolean addition;
+	private int source;
+	private int destination;
+	
+	//the next (lookahead) event, if hasEvent
+	private boolean hasEvent;
+	private int eventRound;
+	private boolean nextAddition;
+	private int nextSource;
+	private int nextDestination;
+	
+	/**Opens a contact stream
+	 * @param file the file of events
+	 * @param secondsPerRound how much time each round of the simulation covers
+	 */
+	public ContactStream(File file, double secondsPerRound) throws IOException, DataFormatException
+	{
+		reader = new BufferedReader(new FileReader(file));
+		this.secondsPerRound = secondsPerRound;
+		readEvent();
+	}
+	
+	/** Moves to the next event, if it happens no later than round.
+	 * Its details are then given by isAddition(), getSource() and getDestination()
+	 * @param round the round being simulated
+	 * @return true if there was such an event
+	 */
+	public boolean next(int round) throws IOException, DataFormatException
+	{
+		if (!hasEvent || eventRound > round)
+			return false;
+		readEvent();
+		return true;
+	}
+	
+	/** @return true if the current event adds an edge, false if it removes one **/
+	public boolean isAddition()
+	{
+		return addition;
+	}
+	
+	public int getSource()
+	{
+		return source;
+	}
+	
+	public int getDestination()
+	{
+		return destination;
+	}
+	
+	/** @return true if there are events that haven't been read yet **/
+	public boolean hasMoreEvents()
+	{
+		return hasEvent;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		reader.close();
+	}
+	
+	/** Makes the lookahead event current, then reads the following one into the lookahead **/
+	private void readEvent() throws IOException, DataFormatException
+	{
+		//current event <- lookahead
+		addition = nextAddition;
+		source = nextSource;
+		destination = nextDestination;
+		
+		String line;
+		do
+		{
+			line = reader.readLine();
+			lineNumber++;
+		} while (line != null && (line.trim().isEmpty() || line.startsWith("#")));
+		hasEvent = line != null;
+		if (!hasEvent)
+			return;
+		
+		String[] fields = line.trim().split("\\s+");
+		if (fields.length != 4 || !(fields[1].equals("+") || fields[1].equals("-")))
+			throw new DataFormatException("Malformed contact on line " + lineNumber + ": " + line);
+		double time = Double.parseDouble(fields[0]);
+		if (!started)
+		{
+			start = time;
+			started = true;
+		}
+		int round = (int) Math.floor((time - start) / secondsPerRound);
+		if (round < eventRound)
+			throw new DataFormatException("Contacts are out of time order on line " + lineNumber);
+		eventRound = round;
+		nextAddition = fields[1].equals("+");
+		nextSource = Integer.parseInt(fields[2]);
+		nextDestination = Integer.parseInt(fields[3]);
+	}
+}
@@ -0,0 +1,225 @@
+/**EventLog.java is an opt-in, binary log of per-node events: infections (with the
+ * node of origin of the infecting agent), recoveries, and sanitation removals.
+ * 
+ * Nodes write events into fixed-size ring buffers, which are drained to the file
+ * by a background thread, so logging neither blocks on I/O nor allocates. Each
+ * thread writes to the ring picked by its thread id; with the work-stealing engine
+ * that is effectively one ring per worker. If a ring is full the writer yields
+ * until the drainer catches up, so memory stays bounded and no event is dropped.
+ * 
+ * Each record is 13 bytes (big-endian, as written by DataOutputStream):
+ * int round, byte type, int node, int value
+ * where value is the origin of the infecting agent for INFECTION and the
+ * number of agents removed for RECOVERY and SANITATION.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+public class EventLog
+{
+	public final static byte INFECTION = 0;
+	public final static byte RECOVERY = 1;
+	public final static byte SANITATION = 2;
+	
+	private final static int RING_CAPACITY = 4096; //events per ring, must be a power of 2
+	private final static long DRAIN_INTERVAL = 1000000; //ns the drainer waits when idle
+	
+	private Ring[] rings;
+	private DataOutputStream out;
+	private Thread drainer;
+	private volatile boolean closed;
+	private IOException failure; //first exception thrown by the drainer, if any
+	
+	/**Opens an event log
+	 * @param file the file to write events to (overwritten)
+	 */
+	public EventLog(File file) throws IOException
+	{
+		//a few more rings than cores, so workers rarely share one
+		int numRings = Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors() - 1) << 1;
+		rings = new Ring[numRings];
+		for (int i = 0; i < numRings; i++)
+			rings[i] = new Ring();
+		
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		drainer = new Thread("EventLog drainer")
+		{
+			@Override
+			public void run()
+			{
+				drainUntilClosed();
+			}
+		};
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+	
+	/** logs that node became infected by an agent that originated in node origin **/
+	public void infection(int node, int round, int origin)
+	{
+		log(INFECTION, node, round, origin);
+	}
+	
+	/** logs that node recovered, throwing away removed agents **/
+	public void recovery(int node, int round, int removed)
+	{
+		log(RECOVERY, node, round, removed);
+	}
+	
+	/** logs that (environment) node removed agents by sanitation **/
+	public void sanitation(int node, int round, int removed)
+	{
+		log(SANITATION, node, round, removed);
+	}
+	
+	private void log(byte type, int node, int round, int value)
+	{
+		Ring ring = rings[(int) Thread.currentThread().getId() & (rings.length - 1)];
+		long header = ((long) type << 32) | (round & 0xFFFFFFFFL);
+		long body = ((long) node << 32) | (value & 0xFFFFFFFFL);
+		while (!ring.offer(header, body))
+		{
+			LockSupport.unpark(drainer);
+			Thread.yield();
+		}
+	}
+	
+	/** Stops the drainer once every logged event has been written, and closes the file.
+	 * PRECONDITION: NO THREAD IS STILL LOGGING EVENTS
+	 */
+	public void close() throws IOException
+	{
+		closed = true;
+		LockSupport.unpark(drainer);
+		try
+		{
+			drainer.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		out.close();
+		if (failure != null)
+			throw failure;
+	}
+	
+	private void drainUntilClosed()
+	{
+		try
+		{
+			while (!closed)
+			{
+				if (drain() == 0)
+					LockSupport.parkNanos(this, DRAIN_INTERVAL);
+			}
+			drain(); //anything logged before close() was called
+		}
+		catch (IOException e)
+		{
+			failure = e;
+		}
+	}
+	
+	/** writes out everything currently in the rings
+	 * @return the number of events written
+	 */
+	private int drain() throws IOException
+	{
+		int written = 0;
+		for (int i = 0; i < rings.length; i++)
+		{
+			Ring ring = rings[i];
+			while (ring.poll())
+			{
+				out.writeInt((int) ring.polledHeader);
+				out.writeByte((int) (ring.polledHeader >>> 32));
+				out.writeInt((int) (ring.polledBody >>> 32));
+				out.writeInt((int) ring.polledBody);
+				written++;
+			}
+		}
+		return written;
+	}
+	
+	/** A bounded ring of events with many writers and one reader (the drainer).
+	 * Each slot has a sequence number saying whether it is free for the writer
+	 * at a given position, or holds an event for the reader at that position.
+	 */
+	private static class Ring
+	{
+		private long[] events = new long[2 * RING_CAPACITY];
+		private AtomicLongArray sequence = new AtomicLongArray(RING_CAPACITY);
+		private AtomicLong tail = new AtomicLong(); //next position to write
+		private long head; //next position to read, only used by the drainer
+		private long polledHeader;
+		private long polledBody;
+		
+		Ring()
+		{
+			for (int i = 0; i < RING_CAPACITY; i++)
+				sequence.set(i, i);
+		}
+		
+		/** @return false if the ring is full **/
+		boolean offer(long header, long body)
+		{
+			while (true)
+			{
+				long position = tail.get();
+				int slot = (int) position & (RING_CAPACITY - 1);
+				long diff = sequence.get(slot) - position;
+				if (diff < 0)
+					return false;
+				if (diff == 0 && tail.compareAndSet(position, position + 1))
+				{
+					events[2 * slot] = header;
+					events[2 * slot + 1] = body;
+					sequence.lazySet(slot, position + 1); //publish to the drainer
+					return true;
+				}
+			}
+		}
+		
+		/** reads the next event into polledHeader and polledBody
+		 * @return false if the ring is empty
+		 */
+		boolean poll()
+		{
+			int slot = (int) head & (RING_CAPACITY - 1);
+			if (sequence.get(slot) != head + 1)
+				return false;
+			polledHeader = events[2 * slot];
+			polledBody = events[2 * slot + 1];
+			sequence.lazySet(slot, head + RING_CAPACITY); //free the slot for writers
+			head++;
+			return true;
+		}
+	}
+}
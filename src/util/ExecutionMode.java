@@ -0,0 +1,35 @@
+/**Utility Enum. Selects how Runner executes the nodes of a simulation.
+ * THREADS runs each node as its own thread (the distributed formulation, and the default),
+ * VIRTUAL_THREADS does the same on virtual threads where the JVM has them (Java 21+),
+ * WORK_STEALING runs the nodes on a fork/join pool using RoundEngine,
+ * COMPACT runs the simulation over packed arrays using CompactEngine (no Node objects),
+ * MEAN_FIELD runs a deterministic expected-value simulation using MeanFieldEngine,
+ * PARTITIONED runs COMPACT's model with a worker per partition using PartitionedEngine.
+ * 
+ * The thread modes are asynchronous: an agent may move on in the round it arrives.
+ * The others run synchronous rounds (every node receives, then every node transitions),
+ * so with the same seed they don't give the same output as THREADS.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+public enum ExecutionMode {
+	THREADS, VIRTUAL_THREADS, WORK_STEALING, COMPACT, MEAN_FIELD, PARTITIONED
+}
@@ -0,0 +1,279 @@
+/**Graph.java holds the topology of a simulation in compressed sparse row (CSR) form:
+ * the out-edges of node u (numbered 0 => n-1 here, 1 => n in the input files) are
+ * edges [offsets[u], offsets[u + 1]), and edge e goes to node targets[e].
+ * 
+ * Graph keeps everything in int and double arrays on the heap, so it is limited to
+ * 2^31 edges; OffHeapGraph is the Topology for larger graphs.
+ * 
+ * Once read, edges can be weighted in bulk: weightEdges() weights every node's
+ * edges in parallel, drawing from a SplitMix stream per node so the weights
+ * don't depend on how many threads do the work. The weights are the same as
+ * those Link.weightEdges() would give each node's links.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.DataFormatException;
+
+public class Graph implements Topology
+{
+	private int n;
+	private int[] offsets;
+	private int[] targets;
+	private double[] weights; //unnormalized weight of each edge
+	private double[] bounds; //upper bound (probHigh) of each edge; the lower bound is the previous one's
+	private int[] inOffsets; //reverse index: the in-edges of node v are inEdges[inOffsets[v], inOffsets[v + 1])
+	private int[] inEdges; //edge numbers, grouped by target. null until indexInEdges() is called
+	
+	/**Makes a graph from CSR arrays
+	 * @param offsets the out-edges of node u are [offsets[u], offsets[u + 1])
+	 * @param targets the destination (0 => n-1) of each edge
+	 */
+	public Graph(int[] offsets, int[] targets)
+	{
+		n = offsets.length - 1;
+		this.offsets = offsets;
+		this.targets = targets;
+		weights = new double[targets.length];
+		bounds = new double[targets.length];
+	}
+	
+	/** Reads a binary graph, as GraphPreprocessor -binary writes them
+	 * @param file the binary graph
+	 * @return the graph, unweighted
+	 * @throws DataFormatException if the graph is malformed, or has 2^31 edges or more
+	 */
+	public static Graph readBinary(File file) throws IOException, DataFormatException
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16)))
+		{
+			long n = in.readLong();
+			long m = in.readLong();
+			if (n < 0 || n >= Integer.MAX_VALUE || m < 0 || m > Integer.MAX_VALUE)
+				throw new DataFormatException(n + " nodes and " + m + " edges don't fit in a Graph");
+			int[] offsets = new int[(int) n + 1];
+			for (int u = 0; u <= n; u++)
+			{
+				long offset = in.readLong();
+				if ((u == 0) ? offset != 0 : (offset < offsets[u - 1] || offset > m))
+					throw new DataFormatException("Offset " + offset + " of node " + (u + 1) + " is out of order");
+				offsets[u] = (int) offset;
+			}
+			if (offsets[(int) n] != m)
+				throw new DataFormatException("The offsets end at " + offsets[(int) n] + ", not " + m);
+			int[] targets = new int[(int) m];
+			for (int e = 0; e < m; e++)
+			{
+				targets[e] = in.readInt();
+				if (targets[e] < 0 || targets[e] >= n)
+					throw new DataFormatException("Edge " + e + " goes to " + targets[e] + ", outside 0 => " + (n - 1));
+			}
+			return new Graph(offsets, targets);
+		}
+	}
+	
+	/** Reads the adjacency list lines ("index : destination destination ...")
+	 * remaining in an input file
+	 * @param scan the input file, positioned after its header
+	 * @param n the number of nodes
+	 * @return the graph, with its edges in the order they were listed
+	 */
+	public static Graph readAdjacency(Scanner scan, int n) throws DataFormatException
+	{
+		//collect the edges as listed, then counting sort them by source
+		int[] sources = new int[1024];
+		int[] destinations = new int[1024];
+		int m = 0;
+		AdjacencyReader reader = new AdjacencyReader(scan, n);
+		while (reader.nextLine())
+		{
+			int degree = reader.getDegree();
+			if (m + degree > sources.length)
+			{
+				int capacity = Math.max(2 * sources.length, m + degree);
+				sources = Arrays.copyOf(sources, capacity);
+				destinations = Arrays.copyOf(destinations, capacity);
+			}
+			for (int i = 0; i < degree; i++)
+			{
+				sources[m] = reader.getSource();
+				destinations[m] = reader.getDestination(i);
+				m++;
+			}
+		}
+		
+		int[] offsets = new int[n + 1];
+		for (int e = 0; e < m; e++)
+			offsets[sources[e] + 1]++;
+		for (int u = 0; u < n; u++)
+			offsets[u + 1] += offsets[u];
+		int[] next = Arrays.copyOf(offsets, n);
+		int[] targets = new int[m];
+		for (int e = 0; e < m; e++)
+			targets[next[sources[e]]++] = destinations[e];
+		return new Graph(offsets, targets);
+	}
+	
+	@Override
+	public int getNumNodes()
+	{
+		return n;
+	}
+	
+	@Override
+	public long getNumEdges()
+	{
+		return targets.length;
+	}
+	
+	@Override
+	public long edgeStart(int u)
+	{
+		return offsets[u];
+	}
+	
+	@Override
+	public long edgeEnd(int u)
+	{
+		return offsets[u + 1];
+	}
+	
+	@Override
+	public int target(long e)
+	{
+		return targets[(int) e];
+	}
+	
+	/** @return the unnormalized weight of edge e **/
+	public double weight(long e)
+	{
+		return weights[(int) e];
+	}
+	
+	@Override
+	public double bound(long e)
+	{
+		return bounds[(int) e];
+	}
+	
+	/** @return the node edge e comes from (a binary search over the offsets) **/
+	@Override
+	public int source(long e)
+	{
+		int low = 0;
+		int high = n - 1;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if (offsets[mid] <= e)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+	
+	@Override
+	public void indexInEdges()
+	{
+		if (inEdges != null)
+			return;
+		inOffsets = new int[n + 1];
+		for (int e = 0; e < targets.length; e++)
+			inOffsets[targets[e] + 1]++;
+		for (int v = 0; v < n; v++)
+			inOffsets[v + 1] += inOffsets[v];
+		int[] next = Arrays.copyOf(inOffsets, n);
+		inEdges = new int[targets.length];
+		for (int e = 0; e < targets.length; e++)
+			inEdges[next[targets[e]]++] = e;
+	}
+	
+	@Override
+	public long inEdgeStart(int v)
+	{
+		return inOffsets[v];
+	}
+	
+	@Override
+	public long inEdgeEnd(int v)
+	{
+		return inOffsets[v + 1];
+	}
+	
+	@Override
+	public long inEdge(long k)
+	{
+		return inEdges[(int) k];
+	}
+	
+	@Override
+	public int findEdge(int u, double prob)
+	{
+		return RoutingKernel.findLink(bounds, offsets[u], offsets[u + 1], prob);
+	}
+	
+	/** Weights every node's edges, in parallel. Node u (named u + 1) gets the same
+	 * weights as Link.weightEdges(its links, stay, SplitMix.stream(seed, u + 1)) gives.
+	 * @param stay the probability that an agent will stay within a node
+	 * @param seed the seed the per-node streams are derived from
+	 */
+	public void weightEdges(final double stay, final long seed)
+	{
+		forEachNode(new NodeAction()
+		{
+			@Override
+			public void apply(int u)
+			{
+				long stream = SplitMix.stream(seed, u + 1);
+				int start = offsets[u];
+				int end = offsets[u + 1];
+				double normalizer = 0;
+				for (int e = start; e < end; e++)
+				{
+					weights[e] = Link.weightOf(SplitMix.uniform(stream, e - start));
+					normalizer += weights[e];
+				}
+				
+				//normalize s.t. the bounds U stay probability sums to 1, as Link.normalizeEdges()
+				double bound = 0;
+				for (int e = start; e < end; e++)
+				{
+					bound += (weights[e] / normalizer) * (1 - stay);
+					bounds[e] = bound;
+				}
+			}
+		});
+	}
+	
+	@Override
+	public void forEachNode(NodeAction action)
+	{
+		ForkJoinPool.commonPool().invoke(new NodeRangeTask(this, action, 0, n));
+	}
+}
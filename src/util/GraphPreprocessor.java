@@ -0,0 +1,672 @@
+/**GraphPreprocessor.java cleans an input file before Runner reads it, which trusts its
+ * adjacency list as it is. It drops self-loops and edges to or from ids outside the
+ * 1 => N of the file's "N =" header, removes duplicate edges, counts the edges whose
+ * reverse isn't listed (and adds the reverses, if asked to symmetrize), and reports the
+ * degrees of the result. The ids the header lists as infected, recovered and environment
+ * nodes are checked too: those outside 1 => N, or already listed, are dropped (and counted).
+ * The output is an input file with the header so checked and one line per node, in order,
+ * or a binary graph.
+ * 
+ * Edge lists can be larger than memory, so edges are sorted externally. The file is
+ * read into fixed-size buffers of edges; each full buffer is sorted and spilled to a
+ * temporary run file by a worker while reading carries on into another buffer (so the
+ * runs are made in parallel, with a bounded number of buffers at once). The runs are
+ * then merged, a bounded number of files at a time, and the merged stream of edges is
+ * written out as it goes. An edge u -> v is sorted both as itself and, marked as a
+ * reverse, as v -> u, so that each edge meets its reverse in the merge.
+ * 
+ * The binary graph is big-endian: the number of nodes n and of edges m as longs, the
+ * n + 1 offsets of each node's edges as longs, then the m targets as ints (numbered
+ * 0 => n-1), the same layout Graph and OffHeapGraph keep. Graph.readBinary() reads it back
+ * (Runner still reads input files; the header isn't kept in the binary graph).
+ * 
+ * Usage: GraphPreprocessor input output [-symmetrize] [-binary] [-memory MB] [-temp dir]
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.DataFormatException;
+
+public class GraphPreprocessor
+{
+	private final static int HEADER_LINES = 4; //N =, then the infected, recovered and environment lines
+	private final static int MAX_FAN_IN = 64; //runs merged at once
+	private final static int IO_BUFFER = 1 << 16;
+	final static long SATURATED = Long.MAX_VALUE / 20; //parseLine()'s value for numbers at least this big
+	final static long NOT_WHOLE = Long.MIN_VALUE; //parseLine()'s value for numbers with a fraction
+	
+	private File input;
+	private boolean symmetrize;
+	private long memoryBytes = 256L << 20;
+	private File tempParent; //where the run files go (null for the system's temporary directory)
+	private int threads = Runtime.getRuntime().availableProcessors();
+	
+	private int n;
+	private ArrayList<String> header = new ArrayList<>();
+	private File tempDirectory;
+	private int numRuns;
+	
+	//what was found
+	private long linesRead;
+	private long edgesRead;
+	private long badSources; //lines whose node isn't in 1 => n (all their edges are dropped)
+	private long badHeaderIds; //ids the header lists that are outside 1 => n or listed already
+	private long outOfRange;
+	private long selfLoops;
+	private long duplicates;
+	private long asymmetric; //edges whose reverse isn't listed
+	private long edgesWritten;
+	private long minDegree = Long.MAX_VALUE;
+	private long maxDegree;
+	private long isolated; //nodes with no edges in the output
+	private double sumSquaredDegrees;
+	
+	/** @param input an input file, as Runner reads them **/
+	public GraphPreprocessor(File input)
+	{
+		this.input = input;
+	}
+	
+	/** Sets whether the reverse of every edge is added, if it isn't listed **/
+	public void setSymmetrize(boolean symmetrize)
+	{
+		this.symmetrize = symmetrize;
+	}
+	
+	/** Sets roughly how much memory the edge buffers may take in all **/
+	public void setMemory(long bytes)
+	{
+		memoryBytes = bytes;
+	}
+	
+	/** Sets where the temporary run files are kept **/
+	public void setTempDirectory(File directory)
+	{
+		tempParent = directory;
+	}
+	
+	public static void main(String[] args)
+	{
+		if (args.length < 2)
+		{
+			System.out.println("Usage: GraphPreprocessor input output [-symmetrize] [-binary] "
+					+ "[-memory MB] [-temp dir]");
+			return;
+		}
+		GraphPreprocessor preprocessor = new GraphPreprocessor(new File(args[0]));
+		boolean binary = false;
+		for (int i = 2; i < args.length; i++)
+		{
+			if (args[i].equals("-symmetrize"))
+				preprocessor.setSymmetrize(true);
+			else if (args[i].equals("-binary"))
+				binary = true;
+			else if (args[i].equals("-memory") && i + 1 < args.length)
+				preprocessor.setMemory(Long.parseLong(args[++i]) << 20);
+			else if (args[i].equals("-temp") && i + 1 < args.length)
+				preprocessor.setTempDirectory(new File(args[++i]));
+			else
+				System.out.println("Ignoring unknown option " + args[i]);
+		}
+		try
+		{
+			if (binary)
+				preprocessor.writeBinary(new File(args[1]));
+			else
+				preprocessor.writeAdjacency(new File(args[1]));
+			System.out.println(preprocessor.getReport());
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/** Cleans the input file into another input file, with the same header **/
+	public void writeAdjacency(File output) throws IOException, DataFormatException, InterruptedException
+	{
+		try
+		{
+			File merged = sortEdges();
+			try (BufferedWriter writer = new BufferedWriter(new FileWriter(output), IO_BUFFER))
+			{
+				for (int i = 0; i < header.size(); i++)
+					writer.write(header.get(i) + "\n");
+				EdgeStream edges = new EdgeStream(merged);
+				StringBuilder line = new StringBuilder();
+				for (int u = 0; u < n; u++)
+				{
+					line.setLength(0);
+					line.append(u + 1).append(" :");
+					long degree = 0;
+					while (edges.hasEdge() && edges.source() == u)
+					{
+						line.append(' ').append(edges.target() + 1);
+						degree++;
+						edges.advance();
+					}
+					countDegree(degree);
+					writer.write(line.append('\n').toString());
+				}
+				edges.close();
+			}
+		}
+		finally
+		{
+			deleteTemporaries();
+		}
+	}
+	
+	/** Cleans the input file into a binary graph (see the class comment) **/
+	public void writeBinary(File output) throws IOException, DataFormatException, InterruptedException
+	{
+		try
+		{
+			File merged = sortEdges();
+			File targets = new File(tempDirectory, "targets.bin");
+			File offsets = new File(tempDirectory, "offsets.bin");
+			try (DataOutputStream targetOut = open(targets); DataOutputStream offsetOut = open(offsets))
+			{
+				EdgeStream edges = new EdgeStream(merged);
+				offsetOut.writeLong(0);
+				long written = 0;
+				for (int u = 0; u < n; u++)
+				{
+					long degree = 0;
+					while (edges.hasEdge() && edges.source() == u)
+					{
+						targetOut.writeInt(edges.target());
+						degree++;
+						edges.advance();
+					}
+					countDegree(degree);
+					written += degree;
+					offsetOut.writeLong(written);
+				}
+				edges.close();
+			}
+			try (DataOutputStream out = open(output))
+			{
+				out.writeLong(n);
+				out.writeLong(edgesWritten);
+				copy(offsets, out);
+				copy(targets, out);
+			}
+		}
+		finally
+		{
+			deleteTemporaries();
+		}
+	}
+	
+	/** @return a summary of what was read, what was removed, and the degrees written **/
+	public String getReport()
+	{
+		double mean = (n == 0) ? 0 : (double) edgesWritten / n;
+		double variance = (n == 0) ? 0 : sumSquaredDegrees / n - mean * mean;
+		return "Read " + edgesRead + " edges on " + linesRead + " lines of " + n + " nodes\n"
+				+ "Removed " + duplicates + " duplicate edges, " + selfLoops + " self-loops, "
+				+ outOfRange + " edges to ids outside 1 => " + n + ", and " + badSources
+				+ " lines of ids outside it\n"
+				+ "Dropped " + badHeaderIds + " infected, recovered or environment ids of the header "
+				+ "outside 1 => " + n + " or listed twice\n"
+				+ asymmetric + " edges had no reverse" + (symmetrize ? " (added)" : "") + "\n"
+				+ "Wrote " + edgesWritten + " edges. Degree: min " + (n == 0 ? 0 : minDegree)
+				+ ", max " + maxDegree + ", mean " + mean + ", stddev " + Math.sqrt(Math.max(0, variance))
+				+ ", " + isolated + " nodes with none";
+	}
+	
+	private void countDegree(long degree)
+	{
+		minDegree = Math.min(minDegree, degree);
+		maxDegree = Math.max(maxDegree, degree);
+		sumSquaredDegrees += (double) degree * degree;
+		if (degree == 0)
+			isolated++;
+	}
+	
+	/** Reads the input file into sorted runs, then merges them into one run
+	 * @return the file of all the edges, sorted, each with its reverse
+	 */
+	private File sortEdges() throws IOException, DataFormatException, InterruptedException
+	{
+		tempDirectory = (tempParent == null) ? File.createTempFile("edges", "")
+				: File.createTempFile("edges", "", tempParent);
+		if (!tempDirectory.delete() || !tempDirectory.mkdirs())
+			throw new IOException("Could not make a temporary directory at " + tempDirectory);
+		ArrayList<File> runs = makeRuns();
+		while (runs.size() > MAX_FAN_IN)
+		{
+			ArrayList<File> merged = new ArrayList<>();
+			for (int i = 0; i < runs.size(); i += MAX_FAN_IN)
+				merged.add(merge(runs.subList(i, Math.min(runs.size(), i + MAX_FAN_IN))));
+			runs = merged;
+		}
+		if (runs.size() == 1)
+			return runs.get(0);
+		return merge(runs);
+	}
+	
+	/** Reads the header, then the edges into buffers that are sorted and spilled by workers
+	 * @return the run files
+	 */
+	private ArrayList<File> makeRuns() throws IOException, DataFormatException, InterruptedException
+	{
+		//every worker may hold a buffer, and the reader one more
+		int bufferSize = (int) Math.max(1024, Math.min(Integer.MAX_VALUE - 8, memoryBytes / 8 / (threads + 1)));
+		final Semaphore buffers = new Semaphore(threads + 1);
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<File>> runs = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new FileReader(input), IO_BUFFER))
+		{
+			readHeader(reader);
+			buffers.acquire();
+			long[] buffer = new long[bufferSize];
+			int size = 0;
+			long[] values = new long[64];
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				int count = parseLine(line, values);
+				if (count == 0)
+					continue;
+				if (count > values.length)
+				{
+					values = new long[count];
+					parseLine(line, values);
+				}
+				linesRead++;
+				long u = values[0];
+				edgesRead += count - 1;
+				if (u < 1 || u > n)
+				{
+					badSources++;
+					continue;
+				}
+				for (int i = 1; i < count; i++)
+				{
+					long v = values[i];
+					if (v < 1 || v > n)
+						outOfRange++;
+					else if (v == u)
+						selfLoops++;
+					else
+					{
+						if (size + 2 > buffer.length)
+						{
+							runs.add(workers.submit(new RunWriter(buffer, size, buffers)));
+							buffers.acquire();
+							buffer = new long[bufferSize];
+							size = 0;
+						}
+						buffer[size++] = key(u - 1, v - 1, 0);
+						buffer[size++] = key(v - 1, u - 1, 1);
+					}
+				}
+			}
+			runs.add(workers.submit(new RunWriter(buffer, size, buffers)));
+		}
+		finally
+		{
+			workers.shutdown();
+		}
+		ArrayList<File> files = new ArrayList<>();
+		try
+		{
+			for (int i = 0; i < runs.size(); i++)
+				files.add(runs.get(i).get());
+		}
+		catch (Exception e)
+		{
+			throw new IOException("Could not write a run of edges", e);
+		}
+		return files;
+	}
+	
+	private void readHeader(BufferedReader reader) throws IOException, DataFormatException
+	{
+		for (int i = 0; i < HEADER_LINES; i++)
+		{
+			String line = reader.readLine();
+			if (line == null)
+				throw new DataFormatException("The input file ends in its header");
+			header.add(line);
+		}
+		long[] values = new long[1];
+		if (parseLine(header.get(0), values) != 1 || values[0] < 0 || values[0] >= Integer.MAX_VALUE)
+			throw new DataFormatException("Expected \"N = <number of nodes>\", not " + header.get(0));
+		n = (int) values[0];
+		
+		//keep the label (the first two words) of each list, and the ids that are in range and new
+		boolean[] listed = new boolean[n + 1];
+		for (int i = 1; i < HEADER_LINES; i++)
+		{
+			String[] tokens = header.get(i).trim().split("\\s+");
+			if (tokens.length < 2)
+				throw new DataFormatException("Expected a label and a list of ids, not " + header.get(i));
+			StringBuilder line = new StringBuilder(tokens[0] + " " + tokens[1]);
+			ArrayList<Integer> ids = new ArrayList<>();
+			for (int t = 2; t < tokens.length; t++)
+			{
+				long id;
+				try
+				{
+					id = Long.parseLong(tokens[t]);
+				}
+				catch (NumberFormatException e)
+				{
+					throw new DataFormatException("Expected an id, not " + tokens[t] + " in " + header.get(i));
+				}
+				if (id < 0)
+					break; //as Runner.getNodesIndexes(), a negative id ends the list
+				if (id < 1 || id > n || listed[(int) id])
+				{
+					badHeaderIds++;
+					continue;
+				}
+				listed[(int) id] = true;
+				ids.add((int) id);
+			}
+			Collections.sort(ids);
+			for (int j = 0; j < ids.size(); j++)
+				line.append(' ').append(ids.get(j));
+			if (ids.isEmpty())
+				line.append(" -1");
+			header.set(i, line.toString());
+		}
+	}
+	
+	/** Reads the numbers on a line, ignoring anything else (e.g. the colon after the node).
+	 * A minus sign right before a number makes it negative, numbers too big to be ids
+	 * saturate at SATURATED, and a number with a fraction (e.g. 1.5) is one NOT_WHOLE,
+	 * so none of them can be taken for an id
+	 * @param values where to put as many of the numbers as fit
+	 * @return how many numbers there are
+	 */
+	static int parseLine(String line, long[] values)
+	{
+		int count = 0;
+		for (int i = 0; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+			boolean negative = (c == '-' && i + 1 < line.length() && Character.isDigit(line.charAt(i + 1)));
+			if (!negative && !Character.isDigit(c))
+				continue;
+			if (negative)
+				i++;
+			long value = 0;
+			while (i < line.length() && Character.isDigit(c = line.charAt(i)))
+			{
+				value = Math.min(SATURATED, 10 * value + (c - '0')); //saturate, it's out of range anyway
+				i++;
+			}
+			if (i + 1 < line.length() && line.charAt(i) == '.' && Character.isDigit(line.charAt(i + 1)))
+			{
+				value = NOT_WHOLE;
+				for (i++; i < line.length() && Character.isDigit(line.charAt(i)); i++)
+					;
+			}
+			else if (negative)
+				value = -value;
+			if (count < values.length)
+				values[count] = value;
+			count++;
+		}
+		return count;
+	}
+	
+	/** @return the sort key of edge u -> v (numbered from 0), tagged 1 if it's a reverse **/
+	private static long key(long u, long v, int reverse)
+	{
+		return (u << 32) | (v << 1) | reverse;
+	}
+	
+	/** Merges sorted runs into one, deleting them
+	 * @return the merged run
+	 */
+	private File merge(List<File> runs) throws IOException
+	{
+		File output = newRun();
+		PriorityQueue<RunReader> queue = new PriorityQueue<>();
+		try (DataOutputStream out = open(output))
+		{
+			for (int i = 0; i < runs.size(); i++)
+			{
+				RunReader reader = new RunReader(runs.get(i));
+				if (reader.advance())
+					queue.add(reader);
+			}
+			while (!queue.isEmpty())
+			{
+				RunReader reader = queue.poll();
+				out.writeLong(reader.key);
+				if (reader.advance())
+					queue.add(reader);
+			}
+		}
+		finally
+		{
+			for (RunReader reader : queue)
+				reader.close();
+			for (int i = 0; i < runs.size(); i++)
+				runs.get(i).delete();
+		}
+		return output;
+	}
+	
+	private synchronized File newRun()
+	{
+		return new File(tempDirectory, "run" + (numRuns++) + ".bin");
+	}
+	
+	private static DataOutputStream open(File file) throws IOException
+	{
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER));
+	}
+	
+	private static void copy(File file, OutputStream out) throws IOException
+	{
+		try (InputStream in = new FileInputStream(file))
+		{
+			byte[] bytes = new byte[IO_BUFFER];
+			int read;
+			while ((read = in.read(bytes)) > 0)
+				out.write(bytes, 0, read);
+		}
+	}
+	
+	private void deleteTemporaries()
+	{
+		if (tempDirectory == null)
+			return;
+		File[] files = tempDirectory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++)
+			files[i].delete();
+		tempDirectory.delete();
+	}
+	
+	/** Sorts a full buffer of edges and spills it to a run file **/
+	private class RunWriter implements Callable<File>
+	{
+		private long[] buffer;
+		private int size;
+		private Semaphore buffers;
+		
+		RunWriter(long[] buffer, int size, Semaphore buffers)
+		{
+			this.buffer = buffer;
+			this.size = size;
+			this.buffers = buffers;
+		}
+		
+		@Override
+		public File call() throws IOException
+		{
+			try
+			{
+				Arrays.sort(buffer, 0, size);
+				File run = newRun();
+				try (DataOutputStream out = open(run))
+				{
+					for (int i = 0; i < size; i++)
+						out.writeLong(buffer[i]);
+				}
+				return run;
+			}
+			finally
+			{
+				buffer = null;
+				buffers.release();
+			}
+		}
+	}
+	
+	/** Reads the keys of a run in order **/
+	private static class RunReader implements Comparable<RunReader>
+	{
+		private DataInputStream in;
+		private long key;
+		
+		RunReader(File run) throws IOException
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), IO_BUFFER));
+		}
+		
+		/** Reads the next key
+		 * @return false, and closes the run, if there are no more
+		 */
+		boolean advance() throws IOException
+		{
+			try
+			{
+				key = in.readLong();
+				return true;
+			}
+			catch (EOFException e)
+			{
+				close();
+				return false;
+			}
+		}
+		
+		void close() throws IOException
+		{
+			in.close();
+		}
+		
+		@Override
+		public int compareTo(RunReader other)
+		{
+			return Long.compare(key, other.key);
+		}
+	}
+	
+	/** Reads the edges to write from the merged run: each distinct edge once, if it was
+	 * listed (or its reverse was, when symmetrizing), counting what is dropped
+	 */
+	private class EdgeStream
+	{
+		private RunReader reader;
+		private boolean more; //whether the reader has a key that hasn't been looked at
+		private long edge = -1; //the current edge's key, without its tag, or -1 if none
+		
+		EdgeStream(File merged) throws IOException
+		{
+			reader = new RunReader(merged);
+			more = reader.advance();
+			advance();
+		}
+		
+		boolean hasEdge()
+		{
+			return edge != -1;
+		}
+		
+		int source()
+		{
+			return (int) (edge >>> 32);
+		}
+		
+		int target()
+		{
+			return (int) ((edge >>> 1) & 0x7FFFFFFFL);
+		}
+		
+		/** Moves on to the next edge to write **/
+		void advance() throws IOException
+		{
+			edge = -1;
+			while (more && edge == -1)
+			{
+				long current = reader.key >>> 1;
+				long listed = 0;
+				boolean reversed = false;
+				while (more && (reader.key >>> 1) == current)
+				{
+					if ((reader.key & 1) == 0)
+						listed++;
+					else
+						reversed = true;
+					more = reader.advance();
+				}
+				if (listed > 1)
+					duplicates += listed - 1;
+				if (listed > 0 && !reversed)
+					asymmetric++;
+				if (listed > 0 || symmetrize)
+				{
+					edge = current << 1;
+					edgesWritten++;
+				}
+			}
+		}
+		
+		void close() throws IOException
+		{
+			if (more)
+				reader.close();
+		}
+	}
+}
@@ -21,6 +21,7 @@
 package util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.ThreadLocalRandom;
 
 import impl.Node;
@@ -28,14 +29,26 @@ import impl.Node;
 public class Link {
 	private double probLow; //s.t. messages are sent when they meet [probLow, probHigh]
 	private double probHigh;
+	private double weight; //unnormalized weight, kept so edges can be renormalized
 	private Node dest; //destination
+	private Agent[] outbox; //agents sent along this link this round, for pull delivery
+	private int outboxSize;
 	
 	/** "Default" constructor... sets probLow and probHigh to what is specified */
 	public Link(double probLow, double probHigh, Node destination)
 	{
 		this.probLow = probLow;
 		this.probHigh = probHigh;
+		weight = probHigh - probLow;
 		dest = destination;
+		outbox = new Agent[0];
+	}
+	
+	/** Constructor override... sets probLow, probHigh and the unnormalized weight they came from */
+	public Link(double probLow, double probHigh, double weight, Node destination)
+	{
+		this(probLow, probHigh, destination);
+		this.weight = weight;
 	}
 	
 	/** Constructor override... sets probLow and probHigh to -1 */
@@ -44,6 +57,7 @@ public class Link {
 		dest = destination;
 		probLow = -1;
 		probHigh = -1;
+		outbox = new Agent[0];
 	}
 	
 	public double getProbLow()
@@ -61,6 +75,38 @@ public class Link {
 		return dest;
 	}
 	
+	public double getWeight()
+	{
+		return weight;
+	}
+	
+	/** Leaves an agent in this link's outbox, for the destination to collect.
+	 * Only the source node of the link may post to it.
+	 */
+	public void post(Agent agent)
+	{
+		if (outboxSize == outbox.length)
+			outbox = Arrays.copyOf(outbox, Math.max(4, 2 * outbox.length));
+		agent.setHolder(dest);
+		outbox[outboxSize++] = agent;
+	}
+	
+	/** Moves the agents in this link's outbox into agents.
+	 * Only the destination node of the link may collect from it.
+	 * @return the number of agents collected
+	 */
+	public int collect(ArrayList<Agent> agents)
+	{
+		int collected = outboxSize;
+		for (int i = 0; i < outboxSize; i++)
+		{
+			agents.add(outbox[i]);
+			outbox[i] = null;
+		}
+		outboxSize = 0;
+		return collected;
+	}
+	
 	private void setProbLow(double prob)
 	{
 		probLow = prob;
@@ -88,36 +134,93 @@ public class Link {
 	 * @param stay the probability that an agent will stay within a node
 	 */
 	public static void weightEdges(ArrayList<Link> outEdges, double stay)
+	{
+		weightEdges(outEdges, stay, ThreadLocalRandom.current().nextLong());
+	}
+	
+	/** Weights the edges as weightEdges(outEdges, stay) does, but reproducibly
+	 * 
+	 * @param outEdges the links to weight
+	 * @param stay the probability that an agent will stay within a node
+	 * @param stream the SplitMix stream to draw the weights from
+	 */
+	public static void weightEdges(ArrayList<Link> outEdges, double stay, long stream)
 	{	
 		//generate a probability for each outEdge.. ea prob corresponds to the prob --> that edge
-		double[] probabilities = new double[outEdges.size()];
-		double normalizer = 0;
 		for (int i = 0; i < outEdges.size(); i++)
+			outEdges.get(i).drawWeight(SplitMix.uniform(stream, i));
+		normalizeEdges(outEdges, stay);
+	}
+	
+	/** Weights one node's edges as weightEdges(its links, stay, stream) (and so
+	 * Graph.weightEdges()) does, keeping only their upper bounds
+	 * 
+	 * @param stay the probability that an agent will stay within a node
+	 * @param stream the SplitMix stream to draw the weights from
+	 * @param bounds edge i's upper bound is put in bounds[offset + i]
+	 * @param offset where the node's bounds start
+	 * @param degree the number of edges
+	 */
+	public static void weightBounds(double stay, long stream, double[] bounds, int offset, int degree)
+	{
+		double normalizer = 0;
+		for (int i = 0; i < degree; i++)
+		{
+			bounds[offset + i] = weightOf(SplitMix.uniform(stream, i));
+			normalizer += bounds[offset + i];
+		}
+		double bound = 0;
+		for (int i = 0; i < degree; i++)
 		{
-			double weight = ThreadLocalRandom.current().nextDouble();
-			//convert to probability to some CPI duration
-			weight = probToCPI(weight);
-			
-			//prevent underflow
-			if (weight < 0)
-				weight = 0.01;		
-			
-			normalizer += weight;
-			probabilities[i] = weight;
+			bound += (bounds[offset + i] / normalizer) * (1 - stay);
+			bounds[offset + i] = bound;
 		}
+	}
+	
+	/** Gives this link a new (unnormalized) weight; normalizeEdges() must be called after
+	 * @param prob the result of calling nextDouble() (or SplitMix.uniform())
+	 */
+	public void drawWeight(double prob)
+	{
+		weight = weightOf(prob);
+	}
+	
+	/** @return the unnormalized weight drawWeight(prob) gives a link **/
+	static double weightOf(double prob)
+	{
+		//convert to probability to some CPI duration
+		double weight = probToCPI(prob);
+		
+		//prevent underflow
+		if (weight < 0)
+			weight = 0.01;
+		return weight;
+	}
+	
+	/** Sets the bounds of each link from the links' weights, s.t. the
+	 * bounds U stay probability sums to 1. Used by weightEdges(), and on its own
+	 * when a node's links change but the weights of the others should not.
+	 * 
+	 * @param outEdges the links to normalize
+	 * @param stay the probability that an agent will stay within a node
+	 */
+	public static void normalizeEdges(ArrayList<Link> outEdges, double stay)
+	{
+		double normalizer = 0;
+		for (int i = 0; i < outEdges.size(); i++)
+			normalizer += outEdges.get(i).weight;
 		
 		double bound = 0; //for setting lower bounds
 		//normalize the generated probabilities s.t. generated probabilities U stay probability sums to 1
 		stay = 1 - stay;
-		for (int i = 0; i < probabilities.length; i++)
+		for (int i = 0; i < outEdges.size(); i++)
 		{
-			double normalized = (probabilities[i] / normalizer) * stay;
 			Link link = outEdges.get(i);
+			double normalized = (link.weight / normalizer) * stay;
 			link.setProbLow(bound); //lower bound is mostly for human use
 			link.setProbHigh(bound + normalized);
 			bound += normalized; 
 		}
-
 	}
 	
 }
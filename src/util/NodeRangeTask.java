@@ -0,0 +1,57 @@
+/**Applies a Topology.NodeAction to a range of nodes, splitting the range in half until
+ * each part has few enough edges (plus nodes). Shared by the implementations of
+ * Topology.forEachNode().
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.util.concurrent.RecursiveAction;
+
+class NodeRangeTask extends RecursiveAction
+{
+	private final static long serialVersionUID = 1L;
+	private final static int EDGE_GRAIN = 1 << 14; //edges per leaf task
+	private Topology graph;
+	private Topology.NodeAction action;
+	private int low;
+	private int high;
+	
+	NodeRangeTask(Topology graph, Topology.NodeAction action, int low, int high)
+	{
+		this.graph = graph;
+		this.action = action;
+		this.low = low;
+		this.high = high;
+	}
+	
+	@Override
+	protected void compute()
+	{
+		//the edge numbers double as a prefix sum of the work (edges) of each node
+		if (high - low <= 1 || graph.edgeEnd(high - 1) - graph.edgeStart(low) + (high - low) <= EDGE_GRAIN)
+		{
+			for (int u = low; u < high; u++)
+				action.apply(u);
+			return;
+		}
+		int mid = (low + high) >>> 1;
+		invokeAll(new NodeRangeTask(graph, action, low, mid), new NodeRangeTask(graph, action, mid, high));
+	}
+}
@@ -0,0 +1,57 @@
+/**NodeStore.java is the interface CompactEngine reads and writes the state of a
+ * simulation through, so the state can be kept on the heap (NodeTable) or off it
+ * (OffHeapNodeTable): each node's packed state, counters and agents, and the agents
+ * in transit along each edge. Nodes are numbered 0 => n-1. States are packed as
+ * the ordinals of NodeState (see NodeTable.SUSCEPTIBLE etc.).
+ * 
+ * Different nodes (and edges) may be read and written by different threads at once.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+public interface NodeStore
+{
+	int getNumNodes();
+	
+	byte getState(int node);
+	
+	void setState(int node, byte state);
+	
+	int getSickCounter(int node);
+	
+	void setSickCounter(int node, int count);
+	
+	int getSanitationCounter(int node);
+	
+	void setSanitationCounter(int node, int count);
+	
+	int getAgents(int node);
+	
+	void setAgents(int node, int count);
+	
+	int getThrownAway(int node);
+	
+	void setThrownAway(int node, int count);
+	
+	/** @return the agents sent along edge e last round **/
+	int getFlow(long e);
+	
+	void setFlow(long e, int count);
+}
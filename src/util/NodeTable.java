@@ -0,0 +1,196 @@
+/**NodeTable.java holds the state of every node of a simulation in primitive arrays
+ * indexed by node (0 => n-1), instead of in Node objects: the state packed into a byte,
+ * the sick and sanitation counters (which never exceed their thresholds + 1) in bytes,
+ * and the agents in the node and the agents it has removed as ints. That is
+ * 11 bytes per node. Agents are only counted, not kept individually; those in
+ * transit are kept as an int per edge.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+public class NodeTable implements NodeStore
+{
+	//packed states, the same as the ordinals of NodeState
+	public final static byte SUSCEPTIBLE = 0;
+	public final static byte INFECTED = 1;
+	public final static byte RECOVERED = 2;
+	public final static byte NONHUMAN = 3;
+	private final static NodeState[] STATES = NodeState.values();
+	
+	private byte[] states;
+	private byte[] sickCounters;
+	private byte[] sanitationCounters;
+	private int[] agents;
+	private int[] thrownAway;
+	private int[] flow; //the agents in transit along each edge
+	
+	/** Makes a table of nodes in the given states, with no agents
+	 * @param nodeStates nodeStates[i] is the state of node i (named i + 1)
+	 * @param numEdges the number of edges in the graph (less than 2^31)
+	 */
+	public NodeTable(NodeState[] nodeStates, long numEdges)
+	{
+		if (numEdges > Integer.MAX_VALUE)
+			throw new IllegalArgumentException(numEdges + " edges is too many for an on-heap table");
+		int n = nodeStates.length;
+		states = new byte[n];
+		sickCounters = new byte[n];
+		sanitationCounters = new byte[n];
+		agents = new int[n];
+		thrownAway = new int[n];
+		flow = new int[(int) numEdges];
+		for (int i = 0; i < n; i++)
+			states[i] = (byte) nodeStates[i].ordinal();
+	}
+	
+	/** Makes a copy of another table, on the heap wherever the other one is kept
+	 * @param other the table to copy
+	 * @param numEdges the number of edges in the graph (less than 2^31)
+	 */
+	public NodeTable(NodeStore other, long numEdges)
+	{
+		if (numEdges > Integer.MAX_VALUE)
+			throw new IllegalArgumentException(numEdges + " edges is too many for an on-heap table");
+		int n = other.getNumNodes();
+		states = new byte[n];
+		sickCounters = new byte[n];
+		sanitationCounters = new byte[n];
+		agents = new int[n];
+		thrownAway = new int[n];
+		flow = new int[(int) numEdges];
+		for (int i = 0; i < n; i++)
+		{
+			states[i] = other.getState(i);
+			sickCounters[i] = (byte) other.getSickCounter(i);
+			sanitationCounters[i] = (byte) other.getSanitationCounter(i);
+			agents[i] = other.getAgents(i);
+			thrownAway[i] = other.getThrownAway(i);
+		}
+		for (int e = 0; e < flow.length; e++)
+			flow[e] = other.getFlow(e);
+	}
+	
+	/** @return the NodeState a packed state stands for **/
+	public static NodeState unpack(byte state)
+	{
+		return STATES[state];
+	}
+	
+	@Override
+	public int getNumNodes()
+	{
+		return states.length;
+	}
+	
+	@Override
+	public byte getState(int node)
+	{
+		return states[node];
+	}
+	
+	@Override
+	public void setState(int node, byte state)
+	{
+		states[node] = state;
+	}
+	
+	@Override
+	public int getSickCounter(int node)
+	{
+		return sickCounters[node];
+	}
+	
+	@Override
+	public void setSickCounter(int node, int count)
+	{
+		sickCounters[node] = (byte) count;
+	}
+	
+	@Override
+	public int getSanitationCounter(int node)
+	{
+		return sanitationCounters[node];
+	}
+	
+	@Override
+	public void setSanitationCounter(int node, int count)
+	{
+		sanitationCounters[node] = (byte) count;
+	}
+	
+	@Override
+	public int getAgents(int node)
+	{
+		return agents[node];
+	}
+	
+	@Override
+	public void setAgents(int node, int count)
+	{
+		agents[node] = count;
+	}
+	
+	@Override
+	public int getThrownAway(int node)
+	{
+		return thrownAway[node];
+	}
+	
+	@Override
+	public void setThrownAway(int node, int count)
+	{
+		thrownAway[node] = count;
+	}
+	
+	@Override
+	public int getFlow(long e)
+	{
+		return flow[(int) e];
+	}
+	
+	@Override
+	public void setFlow(long e, int count)
+	{
+		flow[(int) e] = count;
+	}
+	
+	/** @return a read-only view of the packed state of every node (not a copy, so it
+	 * 		changes as the table does)
+	 */
+	public ByteBuffer getStateView()
+	{
+		return ByteBuffer.wrap(states).asReadOnlyBuffer();
+	}
+	
+	/** @return a read-only view of the agents in every node **/
+	public IntBuffer getAgentView()
+	{
+		return IntBuffer.wrap(agents).asReadOnlyBuffer();
+	}
+	
+	/** @return a read-only view of the agents every node has removed **/
+	public IntBuffer getThrownAwayView()
+	{
+		return IntBuffer.wrap(thrownAway).asReadOnlyBuffer();
+	}
+}
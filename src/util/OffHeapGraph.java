@@ -0,0 +1,314 @@
+/**OffHeapGraph.java is the Topology of a simulation kept outside the Java heap, in
+ * ChunkedBuffers, for graphs too big for Graph: more than 2^31 edges, or enough
+ * edges that arrays of them would burden the garbage collector. The layout is the
+ * same CSR form as Graph's (offsets, targets and bounds, plus the reverse index),
+ * with long offsets. The buffers can be mapped to files in a directory, in which
+ * case the graph can be bigger than memory and the OS pages it in as needed.
+ * 
+ * Edges are read and weighted exactly as Graph reads and weights them, so the
+ * same seed gives the same run with either. Input files that list their nodes in
+ * order (as the data sets do) are read straight into place: besides the offsets and
+ * 8 bytes per line, loading takes the 4 bytes per edge of the targets, rounded up as
+ * the buffer doubles. Files listing their nodes out of order need a second copy of
+ * the targets while the lines are put in order. The 8 bytes per edge of the bounds
+ * are allocated after that.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.DataFormatException;
+
+public class OffHeapGraph implements Topology
+{
+	private int n;
+	private long m;
+	private File directory; //where the buffers are mapped to files, or null for direct memory
+	private ChunkedBuffer offsets; //n + 1 longs: the out-edges of node u are [offsets[u], offsets[u + 1])
+	private ChunkedBuffer targets; //m ints
+	private ChunkedBuffer bounds; //m doubles: the upper bound (probHigh) of each edge
+	private ChunkedBuffer inOffsets; //n + 1 longs, for the reverse index. null until indexInEdges()
+	private ChunkedBuffer inEdges; //m longs: edge numbers, grouped by target
+	
+	private OffHeapGraph(int n, File directory)
+	{
+		this.n = n;
+		this.directory = directory;
+	}
+	
+	/** Reads the adjacency list lines ("index : destination destination ...")
+	 * remaining in an input file
+	 * @param scan the input file, positioned after its header
+	 * @param n the number of nodes
+	 * @param directory where to map the graph to files, or null to keep it in direct memory
+	 * @return the graph, with its edges in the order they were listed
+	 */
+	public static OffHeapGraph readAdjacency(Scanner scan, int n, File directory)
+			throws DataFormatException, IOException
+	{
+		OffHeapGraph graph = new OffHeapGraph(n, directory);
+		ChunkedBuffer offsets = graph.allocate("offsets.bin", 8L * (n + 1));
+		
+		//read the targets in the order they are listed, noting the source and degree of
+		//each line and counting the edges of each source
+		ChunkedBuffer listed = graph.allocate("targets.bin", 4L * 1024);
+		File linesFile = directory == null ? null : new File(directory, "lines.tmp");
+		ChunkedBuffer lines = new ChunkedBuffer(8L * 1024, linesFile);
+		long m = 0;
+		long numLines = 0;
+		boolean inOrder = true; //true if no line lists a smaller source than the line before
+		int lastSource = 0;
+		AdjacencyReader reader = new AdjacencyReader(scan, n);
+		while (reader.nextLine())
+		{
+			int source = reader.getSource();
+			int degree = reader.getDegree();
+			listed.ensureCapacity(4 * (m + degree));
+			for (int i = 0; i < degree; i++)
+				listed.putInt(4 * (m + i), reader.getDestination(i));
+			m += degree;
+			lines.ensureCapacity(8 * (numLines + 1));
+			lines.putInt(8 * numLines, source);
+			lines.putInt(8 * numLines + 4, degree);
+			numLines++;
+			inOrder &= source >= lastSource;
+			lastSource = source;
+			offsets.putLong(8L * source, offsets.getLong(8L * source) + degree);
+		}
+		
+		//after a prefix sum, offsets[u] is the end of u's edges. Going through the lines
+		//from last to first, moving offsets[source] down by each line's degree, leaves
+		//offsets[u] at the start of u's edges, with each node's edges in the order they
+		//were listed. If the lines were in order, that is where they were read to;
+		//otherwise each line's targets are copied to their place in a second buffer
+		prefixSum(offsets, n);
+		ChunkedBuffer targets = inOrder ? listed : graph.allocate("targets.sorted.bin", 4 * m);
+		long end = m;
+		for (long line = numLines - 1; line >= 0; line--)
+		{
+			int source = lines.getInt(8 * line);
+			int degree = lines.getInt(8 * line + 4);
+			long position = offsets.getLong(8L * source) - degree;
+			offsets.putLong(8L * source, position);
+			end -= degree;
+			if (!inOrder)
+			{
+				for (int i = 0; i < degree; i++)
+					targets.putInt(4 * (position + i), listed.getInt(4 * (end + i)));
+			}
+		}
+		offsets.putLong(8L * n, m);
+		lines.close();
+		if (linesFile != null)
+			linesFile.delete();
+		if (!inOrder)
+		{
+			listed.close();
+			if (directory != null)
+				new File(directory, "targets.bin").delete();
+		}
+		
+		graph.m = m;
+		graph.offsets = offsets;
+		graph.targets = targets;
+		graph.bounds = graph.allocate("bounds.bin", 8 * m);
+		return graph;
+	}
+	
+	/** turns counts of the nodes [0, n) in a buffer of longs into running totals **/
+	private static void prefixSum(ChunkedBuffer counts, int n)
+	{
+		long total = 0;
+		for (int u = 0; u < n; u++)
+		{
+			total += counts.getLong(8L * u);
+			counts.putLong(8L * u, total);
+		}
+	}
+	
+	private ChunkedBuffer allocate(String name, long bytes) throws IOException
+	{
+		return new ChunkedBuffer(bytes, directory == null ? null : new File(directory, name));
+	}
+	
+	@Override
+	public int getNumNodes()
+	{
+		return n;
+	}
+	
+	@Override
+	public long getNumEdges()
+	{
+		return m;
+	}
+	
+	@Override
+	public long edgeStart(int u)
+	{
+		return offsets.getLong(8L * u);
+	}
+	
+	@Override
+	public long edgeEnd(int u)
+	{
+		return offsets.getLong(8L * (u + 1));
+	}
+	
+	@Override
+	public int target(long e)
+	{
+		return targets.getInt(4 * e);
+	}
+	
+	@Override
+	public double bound(long e)
+	{
+		return bounds.getDouble(8 * e);
+	}
+	
+	/** @return the node edge e comes from (a binary search over the offsets) **/
+	@Override
+	public int source(long e)
+	{
+		int low = 0;
+		int high = n - 1;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if (edgeStart(mid) <= e)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+	
+	@Override
+	public void indexInEdges()
+	{
+		if (inEdges != null)
+			return;
+		//the same placement as readAdjacency(), by target: each node's in-edges end up ascending
+		try
+		{
+			ChunkedBuffer index = allocate("inoffsets.bin", 8L * (n + 1));
+			for (long e = 0; e < m; e++)
+			{
+				int v = target(e);
+				index.putLong(8L * v, index.getLong(8L * v) + 1);
+			}
+			prefixSum(index, n);
+			ChunkedBuffer edges = allocate("inedges.bin", 8 * m);
+			for (long e = m - 1; e >= 0; e--)
+			{
+				int v = target(e);
+				long position = index.getLong(8L * v) - 1;
+				index.putLong(8L * v, position);
+				edges.putLong(8 * position, e);
+			}
+			index.putLong(8L * n, m);
+			inOffsets = index;
+			inEdges = edges;
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException("Couldn't allocate the reverse index", e);
+		}
+	}
+	
+	@Override
+	public long inEdgeStart(int v)
+	{
+		return inOffsets.getLong(8L * v);
+	}
+	
+	@Override
+	public long inEdgeEnd(int v)
+	{
+		return inOffsets.getLong(8L * (v + 1));
+	}
+	
+	@Override
+	public long inEdge(long k)
+	{
+		return inEdges.getLong(8 * k);
+	}
+	
+	/** The same lower-bound search as RoutingKernel.findLink(), over the buffered bounds **/
+	@Override
+	public int findEdge(int u, double prob)
+	{
+		long start = edgeStart(u);
+		long length = edgeEnd(u) - start;
+		if (length == 0)
+			return 0;
+		long base = start;
+		while (length > 1)
+		{
+			long half = length >>> 1;
+			base = (bound(base + half - 1) < prob) ? base + half : base;
+			length -= half;
+		}
+		return (int) (base - start) + ((bound(base) < prob) ? 1 : 0);
+	}
+	
+	/** Weights every node's edges, in parallel, as Graph.weightEdges() does. The
+	 * unnormalized weights aren't kept; they are held in the bounds until normalized.
+	 * @param stay the probability that an agent will stay within a node
+	 * @param seed the seed the per-node streams are derived from
+	 */
+	public void weightEdges(final double stay, final long seed)
+	{
+		forEachNode(new NodeAction()
+		{
+			@Override
+			public void apply(int u)
+			{
+				long stream = SplitMix.stream(seed, u + 1);
+				long start = edgeStart(u);
+				long end = edgeEnd(u);
+				double normalizer = 0;
+				for (long e = start; e < end; e++)
+				{
+					double weight = Link.weightOf(SplitMix.uniform(stream, e - start));
+					bounds.putDouble(8 * e, weight);
+					normalizer += weight;
+				}
+				
+				double bound = 0;
+				for (long e = start; e < end; e++)
+				{
+					bound += (bounds.getDouble(8 * e) / normalizer) * (1 - stay);
+					bounds.putDouble(8 * e, bound);
+				}
+			}
+		});
+	}
+	
+	@Override
+	public void forEachNode(NodeAction action)
+	{
+		ForkJoinPool.commonPool().invoke(new NodeRangeTask(this, action, 0, n));
+	}
+}
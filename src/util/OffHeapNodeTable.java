@@ -0,0 +1,140 @@
+/**OffHeapNodeTable.java is the NodeStore of a simulation kept outside the Java heap,
+ * in ChunkedBuffers: a 12 byte record per node (state, sick counter, sanitation
+ * counter, a byte of padding, agents, agents thrown away) and the agents in transit
+ * as an int per edge. Like OffHeapGraph, the buffers can be mapped to files.
+ * As in NodeTable, the counters are bytes, so they only hold thresholds below 127.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.io.File;
+import java.io.IOException;
+
+public class OffHeapNodeTable implements NodeStore
+{
+	private final static int RECORD_SIZE = 12;
+	private final static int STATE = 0; //offsets of the fields within a record
+	private final static int SICK_COUNTER = 1;
+	private final static int SANITATION_COUNTER = 2;
+	private final static int AGENTS = 4;
+	private final static int THROWN_AWAY = 8;
+	
+	private int n;
+	private ChunkedBuffer records;
+	private ChunkedBuffer flow; //an int per edge
+	
+	/** Makes a table of nodes in the given states, with no agents
+	 * @param nodeStates nodeStates[i] is the state of node i (named i + 1)
+	 * @param numEdges the number of edges in the graph
+	 * @param directory where to map the table to files, or null to keep it in direct memory
+	 */
+	public OffHeapNodeTable(NodeState[] nodeStates, long numEdges, File directory) throws IOException
+	{
+		n = nodeStates.length;
+		records = new ChunkedBuffer((long) RECORD_SIZE * n,
+				directory == null ? null : new File(directory, "nodes.bin"));
+		flow = new ChunkedBuffer(4 * numEdges, directory == null ? null : new File(directory, "flow.bin"));
+		for (int i = 0; i < n; i++)
+			setState(i, (byte) nodeStates[i].ordinal());
+	}
+	
+	private static long record(int node)
+	{
+		return (long) RECORD_SIZE * node;
+	}
+	
+	@Override
+	public int getNumNodes()
+	{
+		return n;
+	}
+	
+	@Override
+	public byte getState(int node)
+	{
+		return records.getByte(record(node) + STATE);
+	}
+	
+	@Override
+	public void setState(int node, byte state)
+	{
+		records.putByte(record(node) + STATE, state);
+	}
+	
+	@Override
+	public int getSickCounter(int node)
+	{
+		return records.getByte(record(node) + SICK_COUNTER);
+	}
+	
+	@Override
+	public void setSickCounter(int node, int count)
+	{
+		records.putByte(record(node) + SICK_COUNTER, (byte) count);
+	}
+	
+	@Override
+	public int getSanitationCounter(int node)
+	{
+		return records.getByte(record(node) + SANITATION_COUNTER);
+	}
+	
+	@Override
+	public void setSanitationCounter(int node, int count)
+	{
+		records.putByte(record(node) + SANITATION_COUNTER, (byte) count);
+	}
+	
+	@Override
+	public int getAgents(int node)
+	{
+		return records.getInt(record(node) + AGENTS);
+	}
+	
+	@Override
+	public void setAgents(int node, int count)
+	{
+		records.putInt(record(node) + AGENTS, count);
+	}
+	
+	@Override
+	public int getThrownAway(int node)
+	{
+		return records.getInt(record(node) + THROWN_AWAY);
+	}
+	
+	@Override
+	public void setThrownAway(int node, int count)
+	{
+		records.putInt(record(node) + THROWN_AWAY, count);
+	}
+	
+	@Override
+	public int getFlow(long e)
+	{
+		return flow.getInt(4 * e);
+	}
+	
+	@Override
+	public void setFlow(long e, int count)
+	{
+		flow.putInt(4 * e, count);
+	}
+}
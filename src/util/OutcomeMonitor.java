@@ -0,0 +1,231 @@
+/**OutcomeMonitor.java decides when enough replicates of a simulation have been run.
+ * It keeps a running mean and variance (Welford's method) of three outcomes of every
+ * replicate that finishes: its final number of recovered nodes, its peak number of
+ * infected nodes, and its duration in rounds. Once at least a minimum number of
+ * replicates have finished, and the 95% confidence interval of every monitored outcome
+ * is within its target (as a fraction of the outcome's mean), the monitor is precise,
+ * and tells whoever is running the replicates so they can stop.
+ * 
+ * Replicates are counted in the order they were made (by newReplicate()), not the order
+ * they finish in: one that finishes early waits until every replicate made before it has
+ * finished or been abandoned. Short outbreaks finish first, so stopping on whichever had
+ * finished would leave out the long ones still running and bias the outcomes low. Once the
+ * monitor is precise no more replicates are counted, so the replicates still running (all
+ * made after the last one counted) can be cancelled without changing the answer.
+ * 
+ * A replicate's rows are buffered until it is counted, then passed on to another
+ * RoundListener (e.g. a ReplicateAggregator), so replicates that aren't counted (those
+ * cancelled, failed, or finished after the monitor became precise) leave no trace in either.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class OutcomeMonitor
+{
+	public final static String[] OUTCOMES = {"Final R", "Peak I", "Duration"};
+	private final static double Z = 1.96; //of a 95% confidence interval
+	
+	private double[] targets; //relative half-widths, or <= 0 if not monitored
+	private int minReplicates;
+	private RoundListener delegate;
+	private Runnable whenPrecise;
+	private boolean precise;
+	private long count;
+	private int made; //replicates made by newReplicate()
+	private int nextToCount; //the first replicate that hasn't been counted or passed over
+	private HashMap<Integer, ReplicateTracker> ended = new HashMap<>(); //ended before their turn
+	private double[] mean = new double[OUTCOMES.length];
+	private double[] sumSquares = new double[OUTCOMES.length]; //of differences from the mean
+	
+	/**Makes a monitor of the outcomes of replicates
+	 * @param targets the widest each outcome's confidence interval may be on either side of
+	 * 		its mean, as a fraction of the mean, in the order of OUTCOMES. An outcome with
+	 * 		a target <= 0 isn't monitored
+	 * @param minReplicates the fewest replicates to finish before the monitor can be precise
+	 * @param delegate is given the rows of every replicate that finishes, or null
+	 * @param whenPrecise is run once, by the thread that counts the replicate that makes
+	 * 		the monitor precise, or null
+	 */
+	public OutcomeMonitor(double[] targets, int minReplicates, RoundListener delegate,
+			Runnable whenPrecise)
+	{
+		if (targets.length != OUTCOMES.length)
+			throw new IllegalArgumentException("Expected " + OUTCOMES.length + " targets");
+		this.targets = targets.clone();
+		this.minReplicates = Math.max(2, minReplicates);
+		this.delegate = delegate;
+		this.whenPrecise = whenPrecise;
+	}
+	
+	/** @return a listener for a new replicate's leader, counted after those made before it **/
+	public synchronized RoundListener newReplicate()
+	{
+		return new ReplicateTracker(made++);
+	}
+	
+	/** Gives up on a replicate that won't finish (it failed or was cancelled), so that the
+	 * replicates made after it can be counted. Does nothing if the replicate finished
+	 * @param replicate a listener made by newReplicate()
+	 */
+	public void abandon(RoundListener replicate)
+	{
+		ReplicateTracker tracker = (ReplicateTracker) replicate;
+		synchronized (this)
+		{
+			if (tracker.ended)
+				return;
+			tracker.rows = null;
+		}
+		end(tracker);
+	}
+	
+	/** @return true once every monitored outcome is known as precisely as targeted **/
+	public synchronized boolean isPrecise()
+	{
+		return precise;
+	}
+	
+	public synchronized long getNumReplicates()
+	{
+		return count;
+	}
+	
+	/** @return the mean of outcome i (as in OUTCOMES) over the replicates that finished **/
+	public synchronized double getMean(int outcome)
+	{
+		return mean[outcome];
+	}
+	
+	/** @return the half-width of the 95% confidence interval of outcome i's mean **/
+	public synchronized double getHalfWidth(int outcome)
+	{
+		if (count < 2)
+			return Double.POSITIVE_INFINITY;
+		return Z * Math.sqrt(sumSquares[outcome] / (count - 1) / count);
+	}
+	
+	/** Writes the number of replicates, then the mean and confidence interval of each outcome **/
+	public synchronized void writeOutcomes(File file) throws IOException
+	{
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file)))
+		{
+			writer.write("Outcomes of " + count + " replicates" + (precise ? "" : " (targets not met)") + "\n");
+			writer.write("Outcome, Mean, CI low, CI high, Target\n");
+			for (int i = 0; i < OUTCOMES.length; i++)
+			{
+				double halfWidth = getHalfWidth(i);
+				writer.write(OUTCOMES[i] + ", " + mean[i] + ", " + (mean[i] - halfWidth) + ", "
+						+ (mean[i] + halfWidth) + ", " + targets[i] + "\n");
+			}
+		}
+	}
+	
+	/** Notes that a replicate has ended (finished, or abandoned with rows of null), then
+	 * counts every replicate whose turn has come, checking the targets after each
+	 */
+	private void end(ReplicateTracker replicate)
+	{
+		boolean nowPrecise = false;
+		synchronized (this)
+		{
+			replicate.ended = true;
+			ended.put(replicate.index, replicate);
+			while (ended.containsKey(nextToCount))
+			{
+				ReplicateTracker next = ended.remove(nextToCount++);
+				if (next.rows == null || precise)
+					continue;
+				record(next);
+				if (count >= minReplicates && targetsMet())
+				{
+					precise = true;
+					nowPrecise = true;
+				}
+			}
+		}
+		if (nowPrecise && whenPrecise != null)
+			whenPrecise.run();
+	}
+	
+	/** Counts the outcomes of a replicate that finished, and passes its rows on **/
+	private void record(ReplicateTracker replicate)
+	{
+		ArrayList<double[]> rows = replicate.rows;
+		double[] last = rows.isEmpty() ? new double[4] : rows.get(rows.size() - 1);
+		double[] outcomes = {last[3], replicate.peakInfected, rows.size()};
+		count++;
+		for (int i = 0; i < OUTCOMES.length; i++)
+		{
+			double delta = outcomes[i] - mean[i];
+			mean[i] += delta / count;
+			sumSquares[i] += delta * (outcomes[i] - mean[i]);
+		}
+		if (delegate != null)
+		{
+			for (int r = 0; r < rows.size(); r++)
+				delegate.roundCompleted(rows.get(r));
+			delegate.simulationEnded();
+		}
+	}
+	
+	private boolean targetsMet()
+	{
+		for (int i = 0; i < OUTCOMES.length; i++)
+		{
+			if (targets[i] > 0 && getHalfWidth(i) > targets[i] * Math.abs(mean[i]))
+				return false;
+		}
+		return true;
+	}
+	
+	/** Follows one replicate, keeping its rows until it is counted **/
+	private class ReplicateTracker implements RoundListener
+	{
+		private int index; //the order it was made in
+		private ArrayList<double[]> rows = new ArrayList<>(); //null if abandoned
+		private double peakInfected;
+		private boolean ended; //guarded by the monitor
+		
+		ReplicateTracker(int index)
+		{
+			this.index = index;
+		}
+		
+		@Override
+		public void roundCompleted(double[] row)
+		{
+			rows.add(row.clone());
+			peakInfected = Math.max(peakInfected, row[2]);
+		}
+		
+		@Override
+		public void simulationEnded()
+		{
+			end(this);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/**OutputSink.java stores the output of many runs in a few shared files, instead
+ * of one file per run. Each run is given a unique id from a counter file, and its
+ * whole output is appended to shard (id % NUM_SHARDS) in one write. An index line
+ * "runId,offset,length" is then appended to that shard's .idx file, so a single run
+ * can be read back without scanning the others.
+ * 
+ * Both the counter and the shards are guarded by file locks, so runs started in
+ * parallel (in one JVM or several) never share an id or interleave their output.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+
+public class OutputSink
+{
+	private final static int NUM_SHARDS = 8;
+	//file locks are per JVM, so threads of this JVM also take a lock on the counter
+	//or on the shard they write to, one lock per shard so that shards are written in parallel
+	private final static Object ID_LOCK = new Object();
+	private final static Object[] SHARD_LOCKS = new Object[NUM_SHARDS];
+	static
+	{
+		for (int i = 0; i < NUM_SHARDS; i++)
+			SHARD_LOCKS[i] = new Object();
+	}
+	
+	private File directory;
+	
+	/**Makes a sink writing to the given directory, creating it if needed
+	 * @param directory the directory to keep the shards in
+	 */
+	public OutputSink(File directory)
+	{
+		this.directory = directory;
+		directory.mkdirs();
+	}
+	
+	/** Atomically takes the next run id from the counter file
+	 * @return a run id no other run (in any JVM) has been given
+	 */
+	public long nextRunId() throws IOException
+	{
+		synchronized (ID_LOCK)
+		{
+			try (RandomAccessFile file = new RandomAccessFile(new File(directory, "runs.seq"), "rw"))
+			{
+				FileLock lock = file.getChannel().lock();
+				try
+				{
+					long id = 0;
+					if (file.length() >= 8)
+						id = file.readLong();
+					file.seek(0);
+					file.writeLong(id + 1);
+					return id;
+				}
+				finally
+				{
+					lock.release();
+				}
+			}
+		}
+	}
+	
+	/** Appends the output of a run to its shard and indexes it
+	 * @param runId an id from nextRunId()
+	 * @param output the complete output of the run
+	 * @throws IllegalArgumentException if runId is negative (not from nextRunId())
+	 */
+	public void append(long runId, byte[] output) throws IOException
+	{
+		if (runId < 0)
+			throw new IllegalArgumentException("run " + runId + " wasn't given an id by this sink");
+		int shard = (int) (runId % NUM_SHARDS);
+		synchronized (SHARD_LOCKS[shard])
+		{
+			try (RandomAccessFile data = new RandomAccessFile(dataFile(shard), "rw");
+					RandomAccessFile index = new RandomAccessFile(indexFile(shard), "rw"))
+			{
+				FileChannel channel = data.getChannel();
+				FileLock lock = channel.lock();
+				try
+				{
+					long offset = channel.size();
+					ByteBuffer buffer = ByteBuffer.wrap(output);
+					while (buffer.hasRemaining())
+						channel.write(buffer, offset + buffer.position());
+					
+					String entry = runId + "," + offset + "," + output.length + "\n";
+					FileChannel indexChannel = index.getChannel();
+					indexChannel.write(ByteBuffer.wrap(entry.getBytes(StandardCharsets.UTF_8)),
+							indexChannel.size());
+				}
+				finally
+				{
+					lock.release();
+				}
+			}
+		}
+	}
+	
+	/** Reads back the output of a single run using its shard's index
+	 * @param runId the id of the run
+	 * @return the output of the run, exactly as it was appended
+	 * @throws FileNotFoundException if the run isn't in this sink
+	 */
+	public byte[] readRun(long runId) throws IOException
+	{
+		int shard = (int) (runId % NUM_SHARDS);
+		String prefix = runId + ",";
+		try (BufferedReader index = new BufferedReader(new FileReader(indexFile(shard))))
+		{
+			String line;
+			while ((line = index.readLine()) != null)
+			{
+				if (!line.startsWith(prefix))
+					continue;
+				String[] fields = line.split(",");
+				long offset = Long.parseLong(fields[1]);
+				byte[] output = new byte[Integer.parseInt(fields[2])];
+				try (RandomAccessFile data = new RandomAccessFile(dataFile(shard), "r"))
+				{
+					data.seek(offset);
+					data.readFully(output);
+				}
+				return output;
+			}
+		}
+		throw new FileNotFoundException("run " + runId + " is not in " + directory);
+	}
+	
+	private File dataFile(int shard)
+	{
+		return new File(directory, "shard" + shard + ".csv");
+	}
+	
+	private File indexFile(int shard)
+	{
+		return new File(directory, "shard" + shard + ".idx");
+	}
+}
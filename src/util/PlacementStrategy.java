@@ -0,0 +1,28 @@
+/**Utility Enum. Selects how Runner places the initial infected and environment nodes
+ * when the input file doesn't list them. RANDOM picks them uniformly at random (from the
+ * run's seed); the others pick the nodes with the highest degree, k-core number, PageRank
+ * or (approximate) betweenness centrality, as computed by Centrality.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+public enum PlacementStrategy {
+	RANDOM, DEGREE, CORE, PAGERANK, BETWEENNESS
+}
@@ -0,0 +1,271 @@
+/**ReplicateAggregator.java summarizes many replicates of a simulation as they run.
+ * It is given each replicate's per-round 15-tuple by the leader (as a RoundListener)
+ * and keeps, for every round and column, a running mean and variance (Welford's
+ * method) and streaming estimates of the 5th, 50th and 95th percentiles (the P^2
+ * algorithm of Jain and Chlamtac). Memory is proportional to rounds * columns,
+ * no matter how many replicates are run.
+ * 
+ * Replicates stop at different rounds; the statistics of a round only include the
+ * replicates that reached it (see the replicates column of the summary).
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class ReplicateAggregator implements RoundListener
+{
+	//names of columns 1 - 14 of the leader's 15-tuple (column 0 is the round number)
+	public final static String[] COLUMNS = {"S", "I", "R", "Environment", "Agents",
+			"Agents in I", "Avg agents per I", "Agents in transit", "Agents in Environment",
+			"Avg agents per Environment", "Removed from R", "Avg removed per R",
+			"Removed from Environment", "Avg removed per Environment"};
+	private final static double[] QUANTILES = {0.05, 0.5, 0.95};
+	
+	private ArrayList<RoundStats> rounds; //statistics of round i are at index i
+	private int replicates; //number of replicates that have finished
+	
+	public ReplicateAggregator()
+	{
+		rounds = new ArrayList<>();
+		replicates = 0;
+	}
+	
+	@Override
+	public synchronized void roundCompleted(double[] row)
+	{
+		int round = (int) row[0];
+		while (rounds.size() <= round)
+			rounds.add(new RoundStats());
+		rounds.get(round).add(row);
+	}
+	
+	@Override
+	public synchronized void simulationEnded()
+	{
+		replicates++;
+	}
+	
+	public synchronized int getNumReplicates()
+	{
+		return replicates;
+	}
+	
+	public synchronized int getNumRounds()
+	{
+		return rounds.size();
+	}
+	
+	/** @return the mean of column (1 - 14, as in the leader's output) over replicates at round **/
+	public synchronized double getMean(int round, int column)
+	{
+		return rounds.get(round).mean[column - 1];
+	}
+	
+	/** @return the sample variance of column over the replicates that reached round **/
+	public synchronized double getVariance(int round, int column)
+	{
+		return rounds.get(round).variance(column - 1);
+	}
+	
+	/** Writes one line per round: the round, the number of replicates that reached it,
+	 * then the mean, standard deviation, 5th, 50th and 95th percentile of each column
+	 * @param file the file to write the summary to (overwritten)
+	 */
+	public synchronized void writeSummary(File file) throws IOException
+	{
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file)))
+		{
+			writer.write("Summary of " + replicates + " replicates\n");
+			writer.write("Round, Replicates");
+			for (int c = 0; c < COLUMNS.length; c++)
+			{
+				writer.write(", " + COLUMNS[c] + " mean, " + COLUMNS[c] + " stddev");
+				for (int q = 0; q < QUANTILES.length; q++)
+					writer.write(", " + COLUMNS[c] + " p" + Math.round(100 * QUANTILES[q]));
+			}
+			writer.write("\n");
+			
+			for (int r = 0; r < rounds.size(); r++)
+			{
+				RoundStats stats = rounds.get(r);
+				StringBuilder line = new StringBuilder();
+				line.append(r).append(", ").append(stats.count);
+				for (int c = 0; c < COLUMNS.length; c++)
+				{
+					line.append(", ").append(stats.mean[c]);
+					line.append(", ").append(Math.sqrt(stats.variance(c)));
+					for (int q = 0; q < QUANTILES.length; q++)
+						line.append(", ").append(stats.quantiles[c][q].estimate());
+				}
+				line.append("\n");
+				writer.write(line.toString());
+			}
+		}
+	}
+	
+	/** The running statistics of a single round **/
+	private static class RoundStats
+	{
+		private long count;
+		private double[] mean = new double[COLUMNS.length];
+		private double[] sumSquares = new double[COLUMNS.length]; //of differences from the mean
+		private P2Quantile[][] quantiles = new P2Quantile[COLUMNS.length][QUANTILES.length];
+		
+		RoundStats()
+		{
+			for (int c = 0; c < COLUMNS.length; c++)
+				for (int q = 0; q < QUANTILES.length; q++)
+					quantiles[c][q] = new P2Quantile(QUANTILES[q]);
+		}
+		
+		void add(double[] row)
+		{
+			count++;
+			for (int c = 0; c < COLUMNS.length; c++)
+			{
+				double x = row[c + 1];
+				double delta = x - mean[c];
+				mean[c] += delta / count;
+				sumSquares[c] += delta * (x - mean[c]);
+				for (int q = 0; q < QUANTILES.length; q++)
+					quantiles[c][q].add(x);
+			}
+		}
+		
+		double variance(int column)
+		{
+			if (count < 2)
+				return 0;
+			return sumSquares[column] / (count - 1);
+		}
+	}
+	
+	/** Estimates a single quantile of a stream in constant space, by keeping five
+	 * markers whose heights are adjusted with piecewise-parabolic interpolation.
+	 */
+	private static class P2Quantile
+	{
+		private double p;
+		private int count;
+		private double[] heights = new double[5];
+		private int[] positions = new int[5];
+		private double[] desired = new double[5];
+		private double[] increments = new double[5];
+		
+		P2Quantile(double p)
+		{
+			this.p = p;
+		}
+		
+		void add(double x)
+		{
+			if (count < 5)
+			{
+				heights[count++] = x;
+				if (count == 5)
+				{
+					Arrays.sort(heights);
+					for (int i = 0; i < 5; i++)
+						positions[i] = i;
+					desired[0] = 0;
+					desired[1] = 2 * p;
+					desired[2] = 4 * p;
+					desired[3] = 2 + 2 * p;
+					desired[4] = 4;
+					increments[0] = 0;
+					increments[1] = p / 2;
+					increments[2] = p;
+					increments[3] = (1 + p) / 2;
+					increments[4] = 1;
+				}
+				return;
+			}
+			count++;
+			
+			//find the cell x falls in, extending the extremes if needed
+			int cell;
+			if (x < heights[0])
+			{
+				heights[0] = x;
+				cell = 0;
+			}
+			else if (x >= heights[4])
+			{
+				heights[4] = x;
+				cell = 3;
+			}
+			else
+			{
+				cell = 0;
+				while (x >= heights[cell + 1])
+					cell++;
+			}
+			for (int i = cell + 1; i < 5; i++)
+				positions[i]++;
+			for (int i = 0; i < 5; i++)
+				desired[i] += increments[i];
+			
+			//move the middle markers towards their desired positions
+			for (int i = 1; i <= 3; i++)
+			{
+				double offset = desired[i] - positions[i];
+				if ((offset >= 1 && positions[i + 1] - positions[i] > 1)
+						|| (offset <= -1 && positions[i - 1] - positions[i] < -1))
+				{
+					int step = (offset >= 0) ? 1 : -1;
+					double height = parabolic(i, step);
+					if (heights[i - 1] < height && height < heights[i + 1])
+						heights[i] = height;
+					else
+						heights[i] += step * (heights[i + step] - heights[i])
+								/ (positions[i + step] - positions[i]);
+					positions[i] += step;
+				}
+			}
+		}
+		
+		private double parabolic(int i, int step)
+		{
+			double below = positions[i] - positions[i - 1];
+			double above = positions[i + 1] - positions[i];
+			return heights[i] + step / (double) (positions[i + 1] - positions[i - 1])
+					* ((below + step) * (heights[i + 1] - heights[i]) / above
+					+ (above - step) * (heights[i] - heights[i - 1]) / below);
+		}
+		
+		double estimate()
+		{
+			if (count == 0)
+				return 0;
+			if (count >= 5)
+				return heights[2];
+			//too few values for the markers, so use the exact quantile
+			double[] values = Arrays.copyOf(heights, count);
+			Arrays.sort(values);
+			return values[(int) Math.round(p * (count - 1))];
+		}
+	}
+}
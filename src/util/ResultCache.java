@@ -0,0 +1,173 @@
+/**ResultCache.java keeps the outputs of past runs on disk, so a run that has
+ * already been done (same input file, parameters and seed) doesn't have to be
+ * simulated again. Outputs are stored one file per key, named by the SHA-256 of
+ * the input file's contents and the parameters. When the cache grows past its
+ * size limit, the least recently used outputs are removed.
+ * 
+ * Only runs whose seed was fixed should be cached: a run is only reproducible
+ * (and so only worth caching) if its seed is.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+public class ResultCache
+{
+	private File directory;
+	private long maxBytes;
+	
+	/**Makes a cache in the given directory, creating it if needed
+	 * @param directory where outputs are stored
+	 * @param maxBytes the most the outputs may take up before old ones are removed
+	 */
+	public ResultCache(File directory, long maxBytes)
+	{
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		directory.mkdirs();
+	}
+	
+	/** Makes the key of a run
+	 * @param input the input file of the run
+	 * @param parameters everything else the output depends on (thresholds, seed, ...)
+	 * @return the key, as a hex string
+	 */
+	public static String key(File input, Object... parameters) throws IOException
+	{
+		return key(new File[] {input}, parameters);
+	}
+	
+	/** Makes the key of a run that reads more than one file
+	 * @param inputs the files the run reads (e.g. its input file and a contact stream)
+	 * @param parameters everything else the output depends on
+	 * @return the key, as a hex string
+	 */
+	public static String key(File[] inputs, Object... parameters) throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IOException("SHA-256 is not available", e);
+		}
+		
+		byte[] buffer = new byte[1 << 16];
+		for (File input : inputs)
+		{
+			//each file's length first, so moving bytes from one file to the next changes the key
+			digest.update(Long.toString(input.length()).getBytes(StandardCharsets.UTF_8));
+			try (InputStream in = Files.newInputStream(input.toPath()))
+			{
+				int read;
+				while ((read = in.read(buffer)) > 0)
+					digest.update(buffer, 0, read);
+			}
+		}
+		digest.update(Arrays.deepToString(parameters).getBytes(StandardCharsets.UTF_8));
+		
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest())
+			hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+	
+	/** Looks up the output of a run, marking it as recently used
+	 * @param key the key of the run
+	 * @return the output, or null if it isn't cached
+	 */
+	public byte[] get(String key) throws IOException
+	{
+		File file = new File(directory, key + ".csv");
+		try
+		{
+			byte[] output = Files.readAllBytes(file.toPath());
+			file.setLastModified(System.currentTimeMillis());
+			return output;
+		}
+		catch (NoSuchFileException e)
+		{
+			return null;
+		}
+	}
+	
+	/** Stores the output of a run, then removes old outputs if over the size limit
+	 * @param key the key of the run
+	 * @param output the output of the run
+	 */
+	public void put(String key, byte[] output) throws IOException
+	{
+		//write to a temporary file first so no reader ever sees half an output
+		File temp = File.createTempFile(key, ".tmp", directory);
+		Files.write(temp.toPath(), output);
+		Files.move(temp.toPath(), new File(directory, key + ".csv").toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		evict();
+	}
+	
+	/** removes the least recently used outputs until the cache fits in maxBytes **/
+	private void evict()
+	{
+		File[] outputs = directory.listFiles();
+		if (outputs == null)
+			return;
+		long total = 0;
+		for (File output : outputs)
+			total += output.length();
+		if (total <= maxBytes)
+			return;
+		
+		final long[] lastUsed = new long[outputs.length];
+		Integer[] order = new Integer[outputs.length];
+		for (int i = 0; i < outputs.length; i++)
+		{
+			lastUsed[i] = outputs[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer one, Integer two)
+			{
+				return Long.compare(lastUsed[one], lastUsed[two]);
+			}
+		});
+		for (int i = 0; i < order.length && total > maxBytes; i++)
+		{
+			File oldest = outputs[order[i]];
+			long size = oldest.length();
+			if (oldest.delete())
+				total -= size;
+		}
+	}
+}
@@ -0,0 +1,35 @@
+/**RoundListener.java is implemented by anything that wants the leader's
+ * per-round output as numbers, as it is produced, rather than reading the
+ * output file afterwards.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+public interface RoundListener
+{
+	/** Called by the leader once each round has been tallied
+	 * @param row the round's 15-tuple, in the order of the output file (row[0] is
+	 * 		the round number). The array is reused, so it is only valid during the call
+	 */
+	void roundCompleted(double[] row);
+	
+	/** Called by the leader once after the last round of a simulation **/
+	void simulationEnded();
+}
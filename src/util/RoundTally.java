@@ -0,0 +1,144 @@
+/**Tallies the state of every node at the end of a round: how many nodes are in
+ * each state, and the agents in (or removed from) them. The leader tallies the
+ * StatBundles it is sent with this; engines that don't send StatBundles tally
+ * their nodes in parallel, merging the tallies of their tasks with add(RoundTally).
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+public class RoundTally
+{
+	private int numSus;
+	private int numInf;
+	private int numRec;
+	private int numNonHum;
+	private int numAgSus;
+	private int numAgInf;
+	private int numRemovedRec;
+	private int numAgNonHum;
+	private int numRemovedNonHum;
+	private int numAgentsSent; //only totals for infected and environment nodes
+	
+	/** Counts a node in the tally
+	 * @param state the node's state
+	 * @param numAgents the agents staying in the node
+	 * @param thrownAway the agents the node has removed (if recovered or env)
+	 * @param msgsSent the agents the node sent this round
+	 */
+	public void add(NodeState state, int numAgents, int thrownAway, int msgsSent)
+	{
+		add(state, 1, numAgents, thrownAway, msgsSent);
+	}
+	
+	/** Counts several nodes in the same state at once
+	 * @param numNodes the number of nodes
+	 * @param numAgents, thrownAway, msgsSent the nodes' totals, as in add()
+	 */
+	public void add(NodeState state, int numNodes, int numAgents, int thrownAway, int msgsSent)
+	{
+		switch (state)
+		{
+			case SUSCEPTIBLE:
+				numSus += numNodes;
+				numAgSus += numAgents;
+				break;
+			case INFECTED:
+				numInf += numNodes;
+				numAgInf += numAgents;
+				numAgentsSent += msgsSent;
+				break;
+			case NONHUMAN:
+				numNonHum += numNodes;
+				numAgNonHum += numAgents;
+				numRemovedNonHum += thrownAway;
+				numAgentsSent += msgsSent;
+				break;
+			case RECOVERED:
+				numRec += numNodes;
+				numRemovedRec += thrownAway;
+				break;
+		}
+	}
+	
+	/** Adds the nodes counted by another tally to this one **/
+	public void add(RoundTally other)
+	{
+		numSus += other.numSus;
+		numInf += other.numInf;
+		numRec += other.numRec;
+		numNonHum += other.numNonHum;
+		numAgSus += other.numAgSus;
+		numAgInf += other.numAgInf;
+		numRemovedRec += other.numRemovedRec;
+		numAgNonHum += other.numAgNonHum;
+		numRemovedNonHum += other.numRemovedNonHum;
+		numAgentsSent += other.numAgentsSent;
+	}
+	
+	public int getNumSus()
+	{
+		return numSus;
+	}
+	
+	public int getNumInf()
+	{
+		return numInf;
+	}
+	
+	public int getNumRec()
+	{
+		return numRec;
+	}
+	
+	public int getNumNonHum()
+	{
+		return numNonHum;
+	}
+	
+	public int getNumAgSus()
+	{
+		return numAgSus;
+	}
+	
+	public int getNumAgInf()
+	{
+		return numAgInf;
+	}
+	
+	public int getNumRemovedRec()
+	{
+		return numRemovedRec;
+	}
+	
+	public int getNumAgNonHum()
+	{
+		return numAgNonHum;
+	}
+	
+	public int getNumRemovedNonHum()
+	{
+		return numRemovedNonHum;
+	}
+	
+	public int getNumAgentsSent()
+	{
+		return numAgentsSent;
+	}
+}
@@ -0,0 +1,117 @@
+/**RoutingKernel.java routes a batch of agents at once. Instead of sorting the agents
+ * and merging them against the links, it draws all of the random numbers into a
+ * primitive buffer up front and then finds each agent's link with a branch-free
+ * binary search over the links' cumulative upper bounds (their probHigh values).
+ * The search loop has no data-dependent branches, so consecutive agents can be
+ * searched in parallel by the CPU.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+import java.util.ArrayList;
+
+public class RoutingKernel
+{
+	//draw buffers are reused by each worker thread rather than allocated per node
+	private final static ThreadLocal<double[]> DRAW_BUFFERS = new ThreadLocal<double[]>()
+	{
+		@Override
+		protected double[] initialValue()
+		{
+			return new double[64];
+		}
+	};
+	
+	/** Returns the calling thread's draw buffer, grown if needed
+	 * @param count the number of draws the buffer must hold
+	 * @return a buffer of length >= count. Only valid until this thread calls again
+	 */
+	public static double[] drawBuffer(int count)
+	{
+		double[] draws = DRAW_BUFFERS.get();
+		if (draws.length < count)
+		{
+			draws = new double[Math.max(count, 2 * draws.length)];
+			DRAW_BUFFERS.set(draws);
+		}
+		return draws;
+	}
+	
+	/** Makes the array of cumulative upper bounds for a node's links
+	 * @param outEdges the node's links, in order
+	 * @return bounds, where bounds[i] = outEdges.get(i).getProbHigh()
+	 */
+	public static double[] cumulativeBounds(ArrayList<Link> outEdges)
+	{
+		double[] bounds = new double[outEdges.size()];
+		for (int i = 0; i < bounds.length; i++)
+			bounds[i] = outEdges.get(i).getProbHigh();
+		return bounds;
+	}
+	
+	/** Finds the first link whose upper bound is >= prob, without branching on the data.
+	 * An agent with probability prob uses that link (the same link the merge would pick).
+	 * @param bounds the cumulative upper bounds, in ascending order
+	 * @param degree the number of bounds to search
+	 * @param prob the agent's random draw
+	 * @return the index of the link, or degree if the agent stays
+	 */
+	public static int findLink(double[] bounds, int degree, double prob)
+	{
+		return findLink(bounds, 0, degree, prob);
+	}
+	
+	/** As findLink(bounds, degree, prob), over the bounds [start, end) of a larger array
+	 * (e.g. one node's edges in a Graph)
+	 * @return the index of the link relative to start, or end - start if the agent stays
+	 */
+	public static int findLink(double[] bounds, int start, int end, double prob)
+	{
+		if (end == start)
+			return 0;
+		int base = start;
+		int length = end - start;
+		while (length > 1)
+		{
+			int half = length >>> 1;
+			base = (bounds[base + half - 1] < prob) ? base + half : base;
+			length -= half;
+		}
+		return base - start + ((bounds[base] < prob) ? 1 : 0);
+	}
+	
+	/** Draws count random numbers and finds the link each one selects.
+	 * @param bounds the cumulative upper bounds of the node's links
+	 * @param degree the number of links
+	 * @param stream the node's SplitMix stream for this round; agent i uses draw i
+	 * @param draws scratch space for the random draws, of length >= count
+	 * @param links links[offset + i] is set to the link of the ith draw (degree if staying)
+	 * @param offset where in links to start writing
+	 * @param count the number of agents to route
+	 */
+	public static void route(double[] bounds, int degree, long stream, double[] draws,
+			int[] links, int offset, int count)
+	{
+		for (int i = 0; i < count; i++)
+			draws[i] = SplitMix.uniform(stream, offset + i);
+		for (int i = 0; i < count; i++)
+			links[offset + i] = findLink(bounds, degree, draws[i]);
+	}
+}
@@ -0,0 +1,54 @@
+/**SplitMix.java generates random numbers from a seed and an index (SplitMix64),
+ * rather than from a generator's internal state. The ith draw of a stream is the
+ * same no matter which thread asks for it or in what order, so a node's draws
+ * can be split across tasks and still give the same run for the same seed.
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+public class SplitMix
+{
+	private final static long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	
+	/** scrambles the bits of z (the SplitMix64 finalizer) **/
+	public static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+	
+	/** Derives an independent stream from another, e.g. a node's stream from the
+	 * simulation's seed, or a round's stream from a node's
+	 * @param stream the parent stream (or seed)
+	 * @param key what distinguishes the child stream from its siblings
+	 * @return the child stream
+	 */
+	public static long stream(long stream, long key)
+	{
+		return mix(stream + mix(key + GOLDEN_GAMMA));
+	}
+	
+	/** @return the index'th draw of stream, uniform over [0, 1) **/
+	public static double uniform(long stream, long index)
+	{
+		return (mix(stream + (index + 1) * GOLDEN_GAMMA) >>> 11) * 0x1.0p-53;
+	}
+}
@@ -41,6 +41,18 @@ public class StatBundle
 		this.msgsSent = msgsSent;
 	}
 	
+	/** Refills this bundle, so that a node can reuse it for a later round's report **/
+	public void update(int nodeName, NodeState state, int sickCounter, int numAgents,
+			int thrownAway, int msgsSent)
+	{
+		name = nodeName;
+		this.state = state;
+		this.sickCounter = sickCounter;
+		this.numAgents = numAgents;
+		this.thrownAway = thrownAway;
+		this.msgsSent = msgsSent;
+	}
+	
 	public int getName()
 	{
 		return name;
@@ -0,0 +1,80 @@
+/**Topology.java is the interface CompactEngine reads a weighted graph through, so
+ * the graph can be kept on the heap (Graph) or off it (OffHeapGraph). Nodes are
+ * numbered 0 => n-1. Edges are numbered with longs so a graph can have more than
+ * 2^31 of them; the out-edges of node u are [edgeStart(u), edgeEnd(u)).
+ * 
+ * @author EnvironmentalSIR contributors
+ * (Copyright 2026 EnvironmentalSIR contributors)
+ * 
+ * This file is part of NetworkSIR/EnvironmentalSIR.
+
+    NetworkSIR/EnvironmentalSIR is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    NetworkSIR/EnvironmentalSIR is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with NetworkSIR/EnvironmentalSIR.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package util;
+
+public interface Topology
+{
+	int getNumNodes();
+	
+	long getNumEdges();
+	
+	/** @return the first out-edge of node u **/
+	long edgeStart(int u);
+	
+	/** @return one past the last out-edge of node u **/
+	long edgeEnd(int u);
+	
+	/** @return the destination of edge e **/
+	int target(long e);
+	
+	/** @return the upper bound (probHigh) of edge e, once weighted. The edge is taken by
+	 * the draws above the previous edge's bound (or 0, for a node's first edge) and up to this
+	 */
+	double bound(long e);
+	
+	/** @return the node edge e comes from **/
+	int source(long e);
+	
+	/** Finds the edge of node u an agent with probability prob takes
+	 * (the same edge RoutingKernel.findLink() picks from u's links)
+	 * @return the index of the edge among u's edges, or u's degree if the agent stays
+	 */
+	int findEdge(int u, double prob);
+	
+	/** Builds the reverse index of the edges, grouping them by target,
+	 * so each node can find the edges that point to it
+	 */
+	void indexInEdges();
+	
+	/** @return the first in-edge of node v. PRECONDITION: indexInEdges() has been called **/
+	long inEdgeStart(int v);
+	
+	/** @return one past the last in-edge of node v **/
+	long inEdgeEnd(int v);
+	
+	/** @return the edge number of the kth in-edge (over all nodes) **/
+	long inEdge(long k);
+	
+	/** Applies action to every node, in parallel. Nodes are split into tasks by
+	 * their number of edges, so a few high-degree nodes don't hold up the rest.
+	 * Nodes in different tasks may be applied concurrently.
+	 */
+	void forEachNode(NodeAction action);
+	
+	/** Something done to each node of a graph by forEachNode() **/
+	public interface NodeAction
+	{
+		void apply(int node);
+	}
+}